@@ -50,13 +50,13 @@ public abstract class AbstractScriptingNodeModel extends AbstractNodeModel {
 	public static final boolean OPEN_IN_DFT = false;
 	
 	/**
-	 * node setting: chunk size to push input table, columns per chunk (-1 => not split into chunks)
+	 * node setting: chunk size to push input table, columns per chunk (-1 => chunk size is chosen adaptively)
 	 */
 	public static final String CHUNK_IN = "chunk.in";
 	public static final int CHUNK_IN_DFT = -1;
 	
 	/**
-	 * node setting: chunk size to pull result table (-1 => not split into chunks)
+	 * node setting: chunk size to pull result table, rows per chunk (-1 => chunk size is chosen adaptively)
 	 */
 	public static final String CHUNK_OUT = "chunk.out";
 	public static final int CHUNK_OUT_DFT = -1;
@@ -196,7 +196,7 @@ public abstract class ScriptingNodeDialog extends DefaultNodeSettingsPane {
         		+ "<html>"
         		+ "Reset settings"
         		+ "<br />"
-        		+ "(Do not chunk data for transfer)"
+        		+ "(Adapt chunk sizes automatically)"
         		+ "</html>");
         resetButton.addActionListener(new ActionListener() {
 			
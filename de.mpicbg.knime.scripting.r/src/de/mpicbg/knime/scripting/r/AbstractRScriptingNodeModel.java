@@ -1,12 +1,14 @@
 package de.mpicbg.knime.scripting.r;
 
 import java.awt.Color;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -15,7 +17,6 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.knime.core.data.BooleanValue;
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
-import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
 import org.knime.core.data.DoubleValue;
@@ -31,7 +32,9 @@ import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.ModelContent;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettings;
 import org.knime.core.node.config.Config;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortType;
@@ -57,6 +60,8 @@ import de.mpicbg.knime.scripting.core.ScriptingModelConfig;
 import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
 import de.mpicbg.knime.scripting.r.data.RDataColumn;
 import de.mpicbg.knime.scripting.r.data.RDataFrameContainer;
+import de.mpicbg.knime.scripting.r.data.RScriptAnalyzer;
+import de.mpicbg.knime.scripting.r.data.RTransferChunker;
 import de.mpicbg.knime.scripting.r.port.RPortObject2;
 import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
 
@@ -109,15 +114,80 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	/** connection to R-server */
 	protected RConnection m_con = null;
 
+	/** setup commands for m_con which are sent with the next command that needs a result */
+	private RCommandBatch m_batch = null;
+
+	/** generic output holding a detached R session (session affinity), closed on reset */
+	private RPortObject2 m_sessionPort = null;
+
+	/** generic input whose R session is used as m_con (session affinity), the session is given back on close */
+	private RPortObject2 m_sessionSource = null;
+
 	/**
-	 * reset the connection member variable to null after closing
+	 * give the connection back to the connection pool and reset the member variable to null
+	 * (queued commands are dropped)
 	 */
 	protected void closeRConnection() {
+		m_batch = null;
 		if(m_con != null) {
-			if(m_con.isConnected())
-				m_con.close();
+			if(m_sessionSource != null)
+				m_sessionSource.releaseSession(m_con);
+			else
+				RUtils.releaseConnection(m_con);
 			m_con = null;
 		}
+		m_sessionSource = null;
+	}
+
+	/**
+	 * @return command batch of the current connection
+	 */
+	protected RCommandBatch getBatch() {
+		assert m_con != null;
+		if(m_batch == null || m_batch.getConnection() != m_con)
+			m_batch = new RCommandBatch(m_con);
+		return m_batch;
+	}
+
+	/**
+	 * sends all queued commands to R
+	 * @throws KnimeScriptingException
+	 */
+	protected void flushBatch() throws KnimeScriptingException {
+		if(m_batch == null) return;
+		try {
+			m_batch.flush();
+		} catch (RserveException e) {
+			throw new KnimeScriptingException("Failed to push input to R:\n" + e.getMessage());
+		}
+	}
+
+	/**
+	 * removes the workspace of the generic output from its R session (session affinity)
+	 */
+	private void discardSessionPort() {
+		if(m_sessionPort != null) {
+			m_sessionPort.discardSession();
+			m_sessionPort = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+		super.reset();
+		discardSessionPort();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void onDispose() {
+		super.onDispose();
+		discardSessionPort();
 	}
 
 	/**
@@ -157,32 +227,64 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 */
 	protected void pushInputToR(PortObject[] inData, ExecutionContext exec) 
 			throws KnimeScriptingException, CanceledExecutionException {
+		pushInputToR(inData, exec, RUtils.getColumnProjection());
+	}
+
+	/**
+	 * main method to push available input to R
+	 * NOTE: method does not close the connection in case of exceptions
+	 * 
+	 * @param inData
+	 * @param exec
+	 * @param projectColumns	push only the columns of input tables which are referenced by the script
+	 * 							(ignored if the node has a generic output, the workspace is used downstream)
+	 * @throws KnimeScriptingException
+	 * @throws CanceledExecutionException
+	 */
+	protected void pushInputToR(PortObject[] inData, ExecutionContext exec, boolean projectColumns) 
+			throws KnimeScriptingException, CanceledExecutionException {
 
 		ScriptingModelConfig cfg = getNodeCfg();
 		int chunkInSize = -1;
 		if(cfg.useChunkSettings())
-			chunkInSize = getChunkIn(((SettingsModelIntegerBounded) this.getModelSetting(CHUNK_IN)).getIntValue(), inData);
+			chunkInSize = getChunkIn(((SettingsModelIntegerBounded) this.getModelSetting(CHUNK_IN)).getIntValue());
 
 		exec.setMessage("Transfer to R");
 		ExecutionMonitor transferToExec = exec.createSubProgress(1.0/2);
 
 		assert m_con == null;
 
-		m_con = RUtils.createConnection();
-
 		// assign ports to R variable names
 		Map<String, PortObject> inPorts = createPortMapping(inData);
 
 		int nInTables = getNumberOfUsedInputPorts(inData, true);
 		int gIdx = getGenericIndex(inPorts);
+
+		String script = projectColumns && getNumberOfGenericOutputPorts() == 0 ? prepareScript() : null;
+
+		// session affinity: continue in the R session of the upstream node which already holds the workspace
+		boolean workspaceLoaded = false;
+		if(gIdx >= 0) {
+			m_con = ((RPortObject2)inData[gIdx]).takeSession();
+			workspaceLoaded = m_con != null;
+			if(workspaceLoaded)
+				m_sessionSource = (RPortObject2)inData[gIdx];
+		}
+		if(m_con == null)
+			m_con = RUtils.createConnection();
 		
 		pushFlowVariablesToR(getAvailableFlowVariables(), transferToExec);
 
 		// capture all exception to close the R connection in that case
 		try {
 			// generic input to push first
-			if(gIdx >= 0) {
-				File gWorkspaceFile = ((RPortObject2)inData[gIdx]).getFile();
+			if(gIdx >= 0 && !workspaceLoaded) {
+				File gWorkspaceFile;
+				try {
+					gWorkspaceFile = ((RPortObject2)inData[gIdx]).getFile();
+				} catch (IOException e) {
+					throw new KnimeScriptingException(e.getMessage());
+				}
 				RUtils.loadWorkspace(gWorkspaceFile, m_con);
 			}
 
@@ -192,10 +294,15 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 				PortObject pObj = inPorts.get(in);
 				if(pObj != null) {
 					if(BufferedDataTable.TYPE.acceptsPortObject(pObj)) {
-						pushTableToR((BufferedDataTable) pObj, in, transferToExec.createSubProgress(1/nInTables), chunkInSize);
+						BufferedDataTable inTable = (BufferedDataTable) pObj;
+						Set<String> columns = script != null ? getProjectedColumns(script, in, inTable.getDataTableSpec()) : null;
+						pushTableToR(inTable, in, transferToExec.createSubProgress(1/nInTables), chunkInSize, columns);
 					}
 				}
 			}
+
+			// flow variables, table properties and data frame setup in one go
+			flushBatch();
 		} catch (KnimeScriptingException e) {
 			throw e;
 		}
@@ -213,7 +320,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		ScriptingModelConfig cfg = getNodeCfg();
 		int chunkOutSize = -1;
 		if(cfg.useChunkSettings())
-			chunkOutSize = ((SettingsModelIntegerBounded) this.getModelSetting(CHUNK_IN)).getIntValue();
+			chunkOutSize = ((SettingsModelIntegerBounded) this.getModelSetting(CHUNK_OUT)).getIntValue();
 		
 		exec.setMessage("Pull output data from R");
 		ExecutionMonitor transferFromExec = exec.createSubProgress(1.0/2);
@@ -232,19 +339,15 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		}
 		
 		PortObject[] outData = new PortObject[nOut];
+		int gIdx = -1;
 		
 		// for each output port
 		for(int i = 0; i < getNrOutPorts(); i++) {
 			PortType pType = this.getOutPortType(i);
 			
-			// pull R workspace for generic port
+			// pull R workspace for generic port (after the tables, the R session might be detached)
 			if(pType.equals(RPortObject2.TYPE)) {				
-				try {
-					outData[i] = createROutPort();
-				} catch (IOException | KnimeScriptingException e) {
-					closeRConnection();
-					throw new KnimeScriptingException("Failed to create workspace output:\n" + e.getMessage());
-				}
+				gIdx = i;
 			}
 			// pull data frame(s) from R for data table port(s)
 			else if(pType.equals(BufferedDataTable.TYPE)) {
@@ -260,6 +363,15 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 				outData[i] = table;
 			}
 		}
+
+		if(gIdx >= 0) {
+			try {
+				outData[gIdx] = createROutPort(transferFromExec.createSubProgress(1.0/(nTables + nGeneric)));
+			} catch (IOException | KnimeScriptingException e) {
+				closeRConnection();
+				throw new KnimeScriptingException("Failed to create workspace output:\n" + e.getMessage());
+			}
+		}
 		
 		closeRConnection();		
 		return outData;
@@ -267,15 +379,25 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 
 	/**
 	 * retrieve R workspace to create RPortObject
+	 * @param exec	reports the progress of the workspace download
 	 * @return new RPortObject
 	 * @throws IOException
 	 * @throws KnimeScriptingException
 	 */
-	private RPortObject2 createROutPort() throws IOException, KnimeScriptingException {
+	private RPortObject2 createROutPort(ExecutionMonitor exec) throws IOException, KnimeScriptingException {
+		// session affinity: keep the R session for the downstream node, the workspace file is written on demand
+		if(RUtils.getSessionAffinity()) {
+			RPortObject2 outPort = m_sessionSource != null ? new RPortObject2(m_con, m_sessionSource) : new RPortObject2(m_con);
+			m_con = null;
+			m_sessionSource = null;
+			m_sessionPort = outPort;
+			return outPort;
+		}
+
 		// write a local workspace file which contains the input table of the node
 		File rWorkspaceFile = null;
     	rWorkspaceFile = File.createTempFile("genericR", ".RData");  
-    	RUtils.saveWorkspaceToFile(rWorkspaceFile, m_con, RUtils.getHost());
+    	RUtils.saveWorkspaceToFile(rWorkspaceFile, m_con, RUtils.getHost(), exec);
     	
     	RPortObject2 outPort = new RPortObject2(m_con, rWorkspaceFile);
     	return outPort;
@@ -292,21 +414,36 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 * @throws RserveException 
 	 * @throws KnimeScriptingException 
 	 */
-	private void pushTableToR(BufferedDataTable inTable, String varName, ExecutionMonitor exec, int chunkInSize) 
+	protected void pushTableToR(BufferedDataTable inTable, String varName, ExecutionMonitor exec, int chunkInSize) 
+			throws CanceledExecutionException, KnimeScriptingException {
+		pushTableToR(inTable, varName, exec, chunkInSize, null);
+	}
+
+	/**
+	 * push one KNIME table and its properties to R
+	 * @param inTable
+	 * @param varName
+	 * @param exec
+	 * @param chunkInSize 
+	 * @param columns		names of the columns to push, null to push all columns
+	 * @throws CanceledExecutionException 
+	 * @throws KnimeScriptingException 
+	 */
+	protected void pushTableToR(BufferedDataTable inTable, String varName, ExecutionMonitor exec, int chunkInSize, Set<String> columns) 
 			throws CanceledExecutionException, KnimeScriptingException {
 
 		assert m_con != null;
 
 		DataTableSpec inSpec = inTable.getSpec();
 
-		// push color/size/shape model to R
-		pushColorModelToR(inSpec, m_con, exec, varName);
-		pushShapeModelToR(inSpec, m_con, exec, varName);
-		pushSizeModelToR(inSpec, m_con, exec, varName);
+		// push color/size/shape model to R (queued)
+		pushColorModelToR(inSpec, getBatch(), exec, varName);
+		pushShapeModelToR(inSpec, getBatch(), exec, varName);
+		pushSizeModelToR(inSpec, getBatch(), exec, varName);
 
 		try {
-			transferRDataContainer(exec, inTable, chunkInSize, m_con, varName);
-		} catch(REXPMismatchException | RserveException e) {
+			transferRDataContainer(exec, inTable, chunkInSize, getBatch(), varName, columns);
+		} catch(REXPMismatchException | RserveException | IOException e) {
 			throw new KnimeScriptingException("Failed to transfer data to R:\n" + e.getMessage());
 		}
 	}
@@ -363,6 +500,81 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		return -1;
 	}
 
+	/**
+	 * column projection: finds the columns of an input table referenced by the script
+	 * @param script
+	 * @param varName	R variable name of the input table
+	 * @param tSpec
+	 * @return names of the columns to push, null if all columns need to be pushed
+	 */
+	private Set<String> getProjectedColumns(String script, String varName, DataTableSpec tSpec) {
+		Set<String> columns = RScriptAnalyzer.getReferencedColumns(script, varName);
+		if(columns == null) {
+			logger.info("column projection: script uses " + varName + " dynamically, push all columns");
+			return null;
+		}
+		// unknown names might be partial matches of R or columns created by the script
+		for(String column : columns) {
+			if(!tSpec.containsName(column)) {
+				logger.info("column projection: '" + column + "' is not a column of " + varName + ", push all columns");
+				return null;
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * restores the outputs from the result cache if the node was executed before with the same input, script,
+	 * settings, flow variables and R version (see {@link RResultCache}); executes the node and caches its outputs otherwise
+	 * <br/>
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObject[] execute(PortObject[] inObjects, ExecutionContext exec) throws Exception {
+		long cacheSize = RUtils.getResultCacheSize();
+		SettingsModelBoolean openInSM = (SettingsModelBoolean) getModelSetting(OPEN_IN);
+		PortType[] outTypes = new PortType[getNrOutPorts()];
+		for(int i = 0; i < outTypes.length; i++)
+			outTypes[i] = getOutPortType(i);
+
+		if(cacheSize <= 0 || (openInSM != null && openInSM.getBooleanValue()) || !RResultCache.isCacheable(inObjects, outTypes))
+			return super.execute(inObjects, exec);
+
+		String key;
+		try {
+			key = RResultCache.createKey(getClass().getName(), inObjects, prepareScript(), getAvailableFlowVariables(), 
+					getSettingsString() + "factors=" + RUtils.getStringsAsFactors(), exec.createSubProgress(0));
+		} catch (IOException | KnimeScriptingException e) {
+			logger.warn("R result cache not available: " + e.getMessage());
+			return super.execute(inObjects, exec);
+		}
+
+		PortObject[] outData = RResultCache.load(key, outTypes, exec);
+		if(outData != null)
+			return outData;
+
+		outData = super.execute(inObjects, exec);
+		try {
+			RResultCache.store(key, outData, cacheSize, exec.createSubProgress(0));
+			logger.info("stored result in cache (" + RResultCache.getStatistics() + ")");
+		} catch (IOException e) {
+			logger.warn("Failed to store the result in the R result cache: " + e.getMessage());
+		}
+		return outData;
+	}
+
+	/**
+	 * @return all model settings of the node as XML (part of the result cache key)
+	 * @throws IOException
+	 */
+	private String getSettingsString() throws IOException {
+		NodeSettings settings = new NodeSettings("model");
+		saveSettingsTo(settings);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		settings.saveToXML(bos);
+		return bos.toString("UTF-8");
+	}
+
 	/**
 	 * execute method needs to be implemented in sub nodes to create appropriate output
 	 * this method may be called to any push input to R
@@ -385,29 +597,19 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 */
 	@Override
 	protected void openIn(PortObject[] inData, ExecutionContext exec) throws KnimeScriptingException, CanceledExecutionException {
-		pushInputToR(inData, exec);
+		// the external R session gets all columns
+		pushInputToR(inData, exec, false);
 		openInR(inData, exec);
 	}
 
 	/**
-	 * if chunk size setting is -1 or 0, set chunk size to the number of columns available (= no data chunking)
-	 * for multiple inputs use the maximum number of columns of all input tables
+	 * the chunk size setting is an optional override; if it is -1 or 0, the column chunks are sized 
+	 * adaptively for each input table (see {@link RTransferChunker})
 	 * @param cIn
-	 * @param inSpec
-	 * @return chunksize
+	 * @return chunksize or -1 for adaptive chunking
 	 */
-	public static int getChunkIn(int cIn, PortObject[] inTables) {
-
-		if(cIn > 0) return cIn;
-
-		int nColumnMax = 0;
-		for(int i = 0; i < inTables.length; i++) {
-			if(inTables[i] != null && BufferedDataTable.TYPE.acceptsPortObject(inTables[i])) {
-				int n = ((BufferedDataTable)inTables[i]).getSpec().getNumColumns();
-				nColumnMax = n > nColumnMax ? n : nColumnMax;
-			}
-		}
-		return nColumnMax;
+	public static int getChunkIn(int cIn) {
+		return cIn > 0 ? cIn : -1;
 	}
 
 	/**
@@ -459,19 +661,23 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	}
 
 	/**
-	 * pushes one KNIME table to R in chunks
+	 * pushes one KNIME table to R in chunks; the table is read only once
+	 * (the chunks are transferred immediately, the commands to combine them are queued)
 	 * @param exec				execution context
 	 * @param bufTable			KNIME table
-	 * @param colLimit			number of columns per chunk
-	 * @param connection		R-connection
+	 * @param colLimit			number of columns per chunk (-1 or 0: adaptive, see {@link RTransferChunker})
+	 * @param batch				command batch of the R-connection
 	 * @param parName			variable name in R
+	 * @param columnFilter		names of the columns to push, null to push all columns
 	 * @throws RserveException
 	 * @throws REXPMismatchException
 	 * @throws CanceledExecutionException
+	 * @throws IOException				if spilling column blocks to disk failed
 	 */
 	public void transferRDataContainer(ExecutionMonitor exec, BufferedDataTable bufTable, int colLimit,
-			RConnection connection, String parName) throws RserveException, REXPMismatchException, CanceledExecutionException {
+			RCommandBatch batch, String parName, Set<String> columnFilter) throws RserveException, REXPMismatchException, CanceledExecutionException, IOException {
 
+		RConnection connection = batch.getConnection();
 		NodeLogger logger = NodeLogger.getLogger(RDataFrameContainer.class);
 
 		DataTableSpec tSpec = bufTable.getDataTableSpec();
@@ -479,14 +685,91 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		int numCols = tSpec.getNumColumns();
 
 		RDataFrameContainer rDFC = new RDataFrameContainer(numRows, numCols);
+		List<RDataColumn> columns = createRColumns(tSpec, columnFilter);
+		if(columnFilter != null)
+			logger.info("column projection: push " + columns.size() + " column(s) of " + parName + ", skipped " + (numCols - columnFilter.size()) + " column(s) not referenced by the script");
+
+		// assign columns to chunks: fixed number of columns per chunk (node setting) or adaptive
+		if(colLimit > 0) {
+			for(int i = 0; i < columns.size(); i++)
+				rDFC.addColumnSpec(columns.get(i), i / colLimit);
+			logger.info("push " + columns.size() + " column(s) in chunks of " + colLimit + " columns (node setting)");
+		} else {
+			RTransferChunker chunker = new RTransferChunker(RUtils.getTransferMessageSize());
+			long[] bytesPerCell = chunker.measureBytesPerCell(bufTable, columns);
+			List<List<RDataColumn>> chunks = chunker.splitColumns(columns, bytesPerCell, numRows);
+			for(int chunkIdx = 0; chunkIdx < chunks.size(); chunkIdx++)
+				for(RDataColumn rCol : chunks.get(chunkIdx))
+					rDFC.addColumnSpec(rCol, chunkIdx);
+		}
+
+		// read the table once and fill all column chunks
+		exec.setMessage("Read table");
+		try {
+			long memoryBudget = RUtils.getTransferMemoryBudget();
+			rDFC.readTable(bufTable, exec.createSubProgress(0.5), memoryBudget);
+
+			// iterate over the chunks
+			List<Integer> chunks = new ArrayList<Integer>(rDFC.getColumnChunks());
+			int nChunks = chunks.size();
+			for(int i = 0; i < nChunks; i++) {
+				int chunk = chunks.get(i);
+
+				// set sub execution context for this chunk
+				ExecutionMonitor subExec = exec.createSubProgress(0.5/nChunks);
+				subExec.setMessage("Chunk" + (chunk+1));
+				subExec.checkCanceled();
+
+				rDFC.loadChunk(chunk);
+				// double buffering: load the next chunk while this one is transferred if both fit into the memory budget
+				if(i + 1 < nChunks) {
+					int next = chunks.get(i + 1);
+					if(rDFC.getChunkBytes(chunk) + rDFC.getChunkBytes(next) <= memoryBudget)
+						rDFC.loadChunkInBackground(next);
+				}
+				rDFC.pushChunk(chunk, connection, parName, subExec);
+				rDFC.clearChunk(chunk);
+				subExec.setProgress(1);
+			}
+		} finally {
+			rDFC.deleteSpillFiles();
+		}
+
+		exec.setMessage("Create R data frame (cannot be cancelled)");
+
+		rDFC.createDataFrame(parName, batch, RUtils.getStringsAsFactors());
+
+		exec.setMessage("Successful transfer to R");
+	}
+
+	/**
+	 * creates the R column models for all columns of a table spec which can be pushed to R
+	 * @param tSpec
+	 * @return
+	 */
+	private List<RDataColumn> createRColumns(DataTableSpec tSpec) {
+		return createRColumns(tSpec, null);
+	}
+
+	/**
+	 * creates the R column models for the columns of a table spec which can be pushed to R
+	 * @param tSpec
+	 * @param columnFilter	names of the columns to push, null to push all columns
+	 * @return
+	 */
+	private List<RDataColumn> createRColumns(DataTableSpec tSpec, Set<String> columnFilter) {
+		
+		NodeLogger logger = NodeLogger.getLogger(RDataFrameContainer.class);
+		int numCols = tSpec.getNumColumns();
 
 		// iterate over table columns; find the columns which can be pushed
-		int chunkIdx = 0;
-		int chunkCounter = 0;
+		List<RDataColumn> columns = new ArrayList<RDataColumn>();
 		for(int colIdx = 0; colIdx < numCols; colIdx++) {
 			DataColumnSpec cSpec = tSpec.getColumnSpec(colIdx);
 
 			String cName = cSpec.getName();
+			if(columnFilter != null && !columnFilter.contains(cName))
+				continue;
 
 			//check if column type is supported, then add to columns to pass
 			RType type = getRType(cSpec.getType(), cSpec.getDomain().hasValues());
@@ -498,68 +781,13 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 					levels = cSpec.getDomain().getValues();
 					rCol.setLevels(levels);
 				}   			
-				rDFC.addColumnSpec(rCol, chunkIdx);
-
-				chunkCounter ++;
-				if(chunkCounter == colLimit || colIdx == (numCols - 1)) {
-					chunkIdx ++;
-					chunkCounter = 0;
-				}
+				columns.add(rCol);
 			} else {
 				logger.info("Ommit column " + cName + "; data type not supported");
 			}
 		}
 
-		// iterate over the chunks
-		int nChunks = rDFC.getColumnChunks().size();
-		for(int chunk : rDFC.getColumnChunks()) {
-
-			// set sub execution context for this chunk
-			ExecutionMonitor subExec = exec.createSubProgress(1.0/nChunks);
-			subExec.setMessage("Chunk" + (chunk+1));  	
-
-			// initialize data vectors
-			rDFC.initDataVectors(chunk);    	
-
-			// fill arrays with data
-			int rowIdx = 0;
-			for(DataRow row : bufTable) {
-				if(chunk == 0) rDFC.addRowKey(rowIdx, row.getKey().getString());
-
-				subExec.checkCanceled();
-				subExec.setProgress(((double)rowIdx+1)/(double)numRows);
-				subExec.setMessage("Row " + rowIdx + "(chunk " + (chunk+1) + "/ " + nChunks + ")");
-
-				rDFC.addRowData(row, rowIdx, chunk);
-
-				rowIdx ++;
-			}
-			if(!rDFC.hasRows()) subExec.setProgress(1);
-
-			rDFC.pushChunk(chunk, connection, parName, subExec);
-			rDFC.clearChunk(chunk);
-		}
-
-		// if table has no columns, store row-keys only
-		if(nChunks == 0) {
-			int rowIdx = 0;
-			for(DataRow row : bufTable) {
-
-				exec.checkCanceled();
-				exec.setProgress(((double)rowIdx+1)/(double)numRows);
-				exec.setMessage("Row " + rowIdx);
-
-				rDFC.addRowKey(rowIdx, row.getKey().getString());
-				rowIdx ++;
-			}
-			if(!rDFC.hasRows()) exec.setProgress(1);
-		}
-
-		exec.setMessage("Create R data frame (cannot be cancelled)");
-
-		rDFC.createDataFrame(parName, connection);
-
-		exec.setMessage("Successful transfer to R");
+		return columns;
 	}
 
 	/**
@@ -604,12 +832,12 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 * if the input table contains a color model, it is pushed to R as a data frame 'knime.color.model'
 	 * columns: 'value' and 'color'
 	 * @param tSpec	input TableSpec
-	 * @param con	R-serve connection
+	 * @param batch	command batch of the R-serve connection (commands are queued)
 	 * @param exec	Execution context
 	 * @param  varName 
 	 * @throws KnimeScriptingException		if something went wrong pushing the data
 	 */
-	public void pushColorModelToR(DataTableSpec tSpec, RConnection con, ExecutionMonitor exec, String  varName) throws KnimeScriptingException {
+	public void pushColorModelToR(DataTableSpec tSpec, RCommandBatch batch, ExecutionMonitor exec, String  varName) throws KnimeScriptingException {
 
 		String nameInR = varName + ".color.model";
 
@@ -658,13 +886,9 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		l.put("color", new REXPString(colValues));
 
 		// push color model to R
-		try {
-			con.assign(nameInR, new REXPGenericVector(l));
-			con.voidEval(nameInR + " <- as.data.frame(" + nameInR + ")");
-			con.voidEval("names(" + nameInR + ") <- c(\""+ rC.getName() + "\", \"color\")");
-		} catch (RserveException e) {
-			throw new KnimeScriptingException("Failed to push nominal color model to R: " + e.getMessage());
-		}
+		batch.assign(nameInR, new REXPGenericVector(l));
+		batch.voidEval(nameInR + " <- as.data.frame(" + nameInR + ")");
+		batch.voidEval("names(" + nameInR + ") <- c(\""+ rC.getName() + "\", \"color\")");
 		return;
 	}
 
@@ -672,13 +896,13 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 * if the input table contains a shape model, it is pushed to R as a data frame 'knime.shape.model'
 	 * columns: 'value' and 'shape' and 'pch'
 	 * @param tSpec
-	 * @param con
+	 * @param batch	command batch of the R-serve connection (commands are queued)
 	 * @param exec
 	 * @param varName 
 	 * @throws KnimeScriptingException
 	 */
 	public void pushShapeModelToR(DataTableSpec tSpec,
-			RConnection con, ExecutionMonitor exec, String varName) throws KnimeScriptingException {
+			RCommandBatch batch, ExecutionMonitor exec, String varName) throws KnimeScriptingException {
 
 		String nameInR = varName + ".shape.model";
 
@@ -723,26 +947,22 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		l.put("pch", new REXPInteger(ArrayUtils.toPrimitive(shapePch)));
 
 		// push shape model to R
-		try {
-			con.assign(nameInR, new REXPGenericVector(l));
-			con.voidEval(nameInR + " <- as.data.frame(" + nameInR + ")");
-			con.voidEval("names(" + nameInR + ") <- c(\""+ rC.getName() + "\", \"shape\",\"pch\")");
-		} catch (RserveException e) {
-			throw new KnimeScriptingException("Failed to push nominal shape model to R: " + e.getMessage());
-		}
+		batch.assign(nameInR, new REXPGenericVector(l));
+		batch.voidEval(nameInR + " <- as.data.frame(" + nameInR + ")");
+		batch.voidEval("names(" + nameInR + ") <- c(\""+ rC.getName() + "\", \"shape\",\"pch\")");
 		return;
 	}
 
 	/**
 	 * if the input table contains a size model, it is pushed to R as a function 'knime.size.model.fun'
 	 * @param tSpec
-	 * @param con
+	 * @param batch	command batch of the R-serve connection (commands are queued)
 	 * @param exec
 	 * @param varName 
 	 * @throws KnimeScriptingException
 	 */
 	public void pushSizeModelToR(DataTableSpec tSpec,
-			RConnection con, ExecutionMonitor exec, String varName) throws KnimeScriptingException {
+			RCommandBatch batch, ExecutionMonitor exec, String varName) throws KnimeScriptingException {
 		String nameInR = varName + ".size.model.fun";
 		String cNameInR = varName + ".size.model";
 
@@ -781,12 +1001,8 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		REXPString sizeModelName = new REXPString(cNameInR);
 
 		// push size model function to R
-		try {
-			con.assign(cNameInR, new REXPString(tSpec.getColumnSpec(sizeIdx).getName()));
-			con.voidEval(sizeModelFunction);
-		} catch (RserveException e) {
-			throw new KnimeScriptingException("Failed to push numeric size model to R: " + e.getMessage());
-		}
+		batch.assign(cNameInR, new REXPString(tSpec.getColumnSpec(sizeIdx).getName()));
+		batch.voidEval(sizeModelFunction);
 		return;     	
 	}
 
@@ -842,11 +1058,26 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	public static void parseScript(RConnection connection, String fixedScript)
 			throws RserveException, KnimeScriptingException,
 			REXPMismatchException {
+		parseScript(new RCommandBatch(connection), fixedScript);
+	}
+
+	/**
+	 * check for syntax errors; queued commands of the batch are sent along
+	 * 
+	 * @param batch
+	 * @param fixedScript
+	 * @throws RserveException
+	 * @throws KnimeScriptingException
+	 * @throws REXPMismatchException
+	 */
+	public static void parseScript(RCommandBatch batch, String fixedScript)
+			throws RserveException, KnimeScriptingException,
+			REXPMismatchException {
 		REXP out;
 		String rScriptVar = VAR_RKNIME_SCRIPT;
-		connection.assign(rScriptVar, fixedScript);
-		// parse script
-		out = connection.eval("try(parse(text=" + rScriptVar + "), silent = TRUE)");
+		batch.assign(rScriptVar, fixedScript);
+		// parse script (only the error is returned)
+		out = batch.eval("local({ p <- try(parse(text=" + rScriptVar + "), silent = TRUE); if(inherits(p, \"try-error\")) p else NULL })");
 		if( out.inherits("try-error"))
 			throw new KnimeScriptingException("Syntax error: " + out.asString());
 	}
@@ -866,37 +1097,60 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 */
 	public static REXPGenericVector evaluateScript(String fixedScript, RConnection connection) 
 			throws RserveException, KnimeScriptingException, REXPMismatchException {
+		return evaluateScript(fixedScript, new RCommandBatch(connection));
+	}
+
+	/**
+	 * use 'evaluate' package to execute the script and keep input+output+errors+warnings;
+	 * loading the package, the evaluation and queued commands of the batch are sent with a single evaluation
+	 * 
+	 * @param fixedScript 	the R script
+	 * @param batch			command batch of the connection to the R server
+	 * 
+	 * @return	R list containing input, output, plots, (errors - not returned; throws exception instead) and warnings
+	 * 
+	 * @throws RserveException
+	 * @throws KnimeScriptingException
+	 * @throws REXPMismatchException
+	 */
+	public static REXPGenericVector evaluateScript(String fixedScript, RCommandBatch batch) 
+			throws RserveException, KnimeScriptingException, REXPMismatchException {
 
 		// use 'evaluate' package to capture input+output+warnings+error
 		// syntax errors are captured with try
 		REXP r;
 
-		// try to load evaluate package
-		r = connection.eval("try(library(\"evaluate\"))");
-		if (r.inherits("try-error")) 
+		// try to load evaluate package, then try to evaluate script (fails with syntax errors)
+		batch.assign(VAR_RKNIME_SCRIPT, fixedScript);
+		r = batch.eval("if(inherits(try(library(\"evaluate\")), \"try-error\")) NULL else "
+				+ "knime.eval.obj <- evaluate("+ VAR_RKNIME_SCRIPT + ", new_device = FALSE)");
+		if (r.isNull()) 
 			throw new KnimeScriptingException("Package 'evaluate' could not be loaded. \nTo run the script without, please turn off 'Evaluate script' in the node configuration dialog / preference settings?.");
 
-		// try to evaluate script (fails with syntax errors)
-		connection.assign(VAR_RKNIME_SCRIPT, fixedScript);
-		r = connection.eval("knime.eval.obj <- evaluate("+ VAR_RKNIME_SCRIPT + ", new_device = FALSE)");
-
 		// evaluation succeeded
 		// check for errors
-		int[] errIdx = ((REXPInteger) connection.eval("which(sapply(knime.eval.obj, inherits, \"error\") == TRUE, arr.ind = TRUE)")).asIntegers();
-		if(errIdx.length > 0) {
-
-			String firstError = "Error " + "(1/" + errIdx.length + "): ";
-			REXPString error = (REXPString) connection.eval("knime.eval.obj[[" + errIdx[0] + "]]$message");
-			firstError = firstError + error.asString() + "\n\tSee R-console view for further details";
+		RList evalItems = r.asList();
+		int nErrors = 0;
+		String firstMessage = null;
+		for(int i = 0; i < evalItems.size(); i++) {
+			REXP item = evalItems.at(i);
+			if(item.inherits("error")) {
+				nErrors++;
+				if(firstMessage == null) firstMessage = item.asList().at("message").asString();
+			}
+		}
+		if(nErrors > 0) {
+			String firstError = "Error " + "(1/" + nErrors + "): ";
+			firstError = firstError + firstMessage + "\n\tSee R-console view for further details";
 
 			throw new KnimeScriptingException(firstError);
 		}
 
-		return (REXPGenericVector) (connection.eval("knime.eval.obj"));
+		return (REXPGenericVector) r;
 	}
 
 	/**
-	 * input flow variables are pushed to R as knime.flow.in
+	 * input flow variables are pushed to R as knime.flow.in (queued, see {@link #getBatch()})
 	 * @param flowVariables
 	 * @param exec
 	 * @throws KnimeScriptingException 
@@ -932,12 +1186,8 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 			if(value != null) l.put(name, value);
 		}
 
-		// push flow variables to R
-		try {
-			m_con.assign("knime.flow.in", new REXPGenericVector(l));
-		} catch (RserveException e) {
-			throw new KnimeScriptingException("Failed to push KNIME flow variables to R: " + e);
-		}
+		// push flow variables to R (queued)
+		getBatch().assign("knime.flow.in", new REXPGenericVector(l));
 	}
 
 	/**
@@ -957,7 +1207,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		File workspaceFile;
 		try {
 			workspaceFile = File.createTempFile("openInR_", ".RData");			
-			RUtils.saveWorkspaceToFile(workspaceFile, m_con, RUtils.getHost());
+			RUtils.saveWorkspaceToFile(workspaceFile, m_con, RUtils.getHost(), exec);
 			logger.info("Spawning R-instance ...");
 			RUtils.openWSFileInR(workspaceFile, rawScript); 
 		} catch (IOException | KnimeScriptingException e) {
@@ -974,7 +1224,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 * @param rOutName			look for such variable in R
 	 * @param exec				subprogress-monitor
 	 * @param execM				necessary to create new KNIME table
-	 * @param chunkOutSize		how many rows at once?
+	 * @param chunkOutSize		how many rows at once? (-1 or 0: adaptive)
 	 * @return					KNIME table with content from R data frame
 	 * @throws RserveException
 	 * @throws REXPMismatchException
@@ -987,10 +1237,48 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 
 		exec.setMessage("R snippet finished - pull data from R");
 
-		int numRows = ((REXPInteger)m_con.eval("nrow(" + rOutName + ")")).asInteger();
-		int numCols = ((REXPInteger)m_con.eval("ncol(" + rOutName + ")")).asInteger();
-		// correct chunksize if it is -1 or 0 (no chunking)
-		chunkOutSize = chunkOutSize <= 0 ? numRows : chunkOutSize;
+		RDataFrameContainer rDFC = createRDataFrameContainer(rOutName, exec);
+		int numRows = rDFC.getNumRows();
+
+		// create DataTableSpec from rDFC
+		BufferedDataContainer con = execM.createDataContainer(rDFC.createDataTableSpec());
+
+		// fill table with data
+		exec.setMessage("retrieve data from R (cannot be cancelled)");
+		exec.checkCanceled();
+
+		if(numRows > 0) {
+			// chunk size is -1 or 0: adapt to column sizes, message size and free heap
+			if(chunkOutSize <= 0)
+				chunkOutSize = new RTransferChunker(RUtils.getTransferMessageSize()).getRowBlockSize(rDFC.getColumns(), numRows);
+			else
+				logger.info("pull " + numRows + " row(s) in blocks of " + chunkOutSize + " rows (node setting)");
+			rDFC.readDataFromR(con, m_con, exec, rOutName, chunkOutSize);
+		}
+
+		con.close();
+		return con.getTable();
+	}
+
+	/**
+	 * creates the table model for an R data frame with row names and column specs (no data)
+	 * @param rOutName
+	 * @param exec
+	 * @return
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 * @throws CanceledExecutionException
+	 */
+	private RDataFrameContainer createRDataFrameContainer(String rOutName, ExecutionMonitor exec) 
+			throws RserveException, REXPMismatchException, CanceledExecutionException {
+
+		// get dimensions and column specs with a single call
+		exec.setMessage("retrieve column specs from R (cannot be cancelled)");
+		RList metaData = getDataFrameMetaData(m_con, rOutName);
+		
+		int numRows = metaData.at("nrow").asInteger();
+		String[] cNames = metaData.at("names").asStrings();
+		int numCols = cNames.length;
 
 		RDataFrameContainer rDFC = new RDataFrameContainer(numRows, numCols);
 
@@ -1000,93 +1288,71 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		if(numRows > 0) rowNames = m_con.eval("rownames(" + rOutName + ")").asStrings();
 		rDFC.addRowNames(rowNames);
 
-		exec.setMessage("retrieve column specs from R (cannot be cancelled)");
 		exec.checkCanceled();
 
-		// get column specs
+		// create column specs
 		if(numCols > 0) {
-			//names(rOut)	column names
-			String[] cNames = getDataFrameColumnNames(numCols, m_con, rOutName);
-			//sapply(rOut, typeof)		storage mode
-			String[] typeOf = getDataFrameColumnTypes(numCols, m_con, rOutName);	
-			// sapply(rOut, is.factor)		is factor?
-			boolean[] isFactor = ((REXPLogical)m_con.eval("sapply(" + rOutName + ", is.factor)")).isTRUE();
+			String[] typeOf = metaData.at("types").asStrings();
+			boolean[] isFactor = ((REXPLogical)metaData.at("factor")).isTRUE();
+			RList levelList = metaData.at("levels").asList();
+			RList rangeList = metaData.at("range").asList();
+			int[] numNA = metaData.at("na").asIntegers();
+			double[] stringBytes = metaData.at("strbytes").asDoubles();
 
 			// iterate over columns to get their data types
 			for(int i = 0; i < numCols; i++) {		
 				RType t = getRType(typeOf[i], isFactor[i]);
 				RDataColumn rCol = new RDataColumn(cNames[i], t, i);
+				rCol.setNumMissing(numNA[i]);
+				if(t.equals(RType.R_STRING))
+					rCol.setMessageBytesPerCell((long) Math.ceil(stringBytes[i]));
 				exec.checkCanceled();
 				// add level information
 				if(rDFC.hasRows()) {
 					if(t.equals(RType.R_FACTOR)) {
-						String[] levels = ((REXPString)m_con.eval("levels(" + rOutName + "[," + (i+1) + "])")).asStrings();
-						rCol.setLevels(levels);
+						rCol.setLevels(levelList.at(i).asStrings());
 					}
-					// add information of lower / upper bounds
-					if(t.equals(RType.R_DOUBLE) || t.equals(RType.R_INT) || t.equals(RType.R_LOGICAL)) {
-						// range(rOut[,1],na.rm = TRUE)*1.0		returns min/max as doubles
-						double[] bounds = ((REXPDouble) m_con.eval("range(" + rOutName + "[," + (i+1) + "], na.rm = TRUE)*1.0")).asDoubles();
-						rCol.setBounds(bounds);
+					// add information of lower / upper bounds (not available if there are only missing values)
+					if((t.equals(RType.R_DOUBLE) || t.equals(RType.R_INT) || t.equals(RType.R_LOGICAL)) && numNA[i] < numRows) {
+						rCol.setBounds(rangeList.at(i).asDoubles());
 					}
 				}
 
-
 				rDFC.addColumnSpec(rCol, 0);		
 			}
 		}
-
-		// create DataTableSpec from rDFC
-		BufferedDataContainer con = execM.createDataContainer(rDFC.createDataTableSpec());
-
-		// fill table with data
-		exec.setMessage("retrieve data from R (cannot be cancelled)");
-		exec.checkCanceled();
-
-		if(numRows > 0) {
-			rDFC.readDataFromR(con, m_con, exec, rOutName, chunkOutSize);
-		}
-
-		con.close();
-		return con.getTable();
-	}
-
-	/**
-	 * retrieve the column types of an R data frame
-	 * @param numCols
-	 * @param connection
-	 * @param rOutName
-	 * @return
-	 * @throws RserveException
-	 * @throws REXPMismatchException
-	 */
-	private String[] getDataFrameColumnTypes(int numCols, RConnection connection, String rOutName) throws RserveException, REXPMismatchException {
-		if(numCols == 1) {
-			return new String[]{((REXPString)connection.eval("sapply(" + rOutName + ", typeof)")).asString()};
-		} else {
-			return ((REXPString)connection.eval("sapply(" + rOutName + ", typeof)")).asStrings();
-		}
+		
+		return rDFC;
 	}
 
 	/**
-	 * retrieve the columns names of an R data frame
-	 * @param numCols
+	 * retrieve the dimensions and column information of an R data frame with a single call
 	 * @param connection
 	 * @param rOutName
-	 * @return
+	 * @return list with 'nrow', 'names', 'types' (typeof), 'factor' (is.factor), 'levels' (NULL if not a factor), 
+	 * 'range' (min/max as doubles, NULL if not numeric), 'na' (number of missing values) and 'strbytes'
+	 * (mean bytes per cell of the first rows of character columns incl. terminating 0, 0 otherwise)
 	 * @throws RserveException
 	 * @throws REXPMismatchException
 	 */
-	private String[] getDataFrameColumnNames(int numCols, RConnection connection, String rOutName) throws RserveException, REXPMismatchException {
-		if(numCols == 1) {
-			return new String[]{((REXPString)connection.eval("names(" + rOutName + ")")).asString()};
-		} else {
-			return ((REXPString)connection.eval("names(" + rOutName + ")")).asStrings();
-		}
+	private RList getDataFrameMetaData(RConnection connection, String rOutName) throws RserveException, REXPMismatchException {
+		String cmd = "local({" +
+				"df <- " + rOutName + "; " +
+				"isNum <- function(x) (is.numeric(x) || is.logical(x)) && !is.factor(x); " +
+				"list(" +
+				"nrow = nrow(df), " +
+				"names = as.character(names(df)), " +
+				"types = unname(vapply(df, typeof, \"\")), " +
+				"factor = unname(vapply(df, is.factor, NA)), " +
+				"levels = unname(lapply(df, function(x) if(is.factor(x)) levels(x) else NULL)), " +
+				"range = unname(lapply(df, function(x) if(isNum(x) && !all(is.na(x))) range(x, na.rm = TRUE)*1.0 else NULL)), " +
+				"na = unname(vapply(df, function(x) sum(is.na(x)), 0L)), " +
+				"strbytes = unname(vapply(df, function(x) if(is.character(x) && length(x) > 0) " +
+				"mean(nchar(head(x, " + RTransferChunker.SAMPLE_ROWS + "), type = \"bytes\")) + 1 else 0, 0))" +
+				")})";
+		return connection.eval(cmd).asList();
 	}
 
-	
-
 	/**
 	 * main method to run the script (after pushing data and before pulling result data)
 	 * @param exec
@@ -1106,7 +1372,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
         String script = prepareScript();
  
         try {
-			parseScript(m_con, script);
+			parseScript(getBatch(), script);
 		} catch (RserveException | KnimeScriptingException | REXPMismatchException e) {
 			closeRConnection();
 			throw new KnimeScriptingException("Failed to parse the script:\n" + e.getMessage());
@@ -1118,7 +1384,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
         		// parse and run script
         		// evaluation list, can be used to create a console view, throws first R-error-message
 
-        		REXPGenericVector knimeEvalObj = evaluateScript(script, m_con);
+        		REXPGenericVector knimeEvalObj = evaluateScript(script, getBatch());
 
         		// check for warnings
         		ArrayList<String> warningMessages = RUtils.checkForWarnings(m_con);
@@ -56,6 +56,7 @@ public class R4KnimeBundleActivator extends AbstractUIPlugin {
      */
     @Override
     public void stop(final BundleContext context) throws Exception {
+        RConnectionPool.closeAll();
         super.stop(context);
         plugin = null;
     }
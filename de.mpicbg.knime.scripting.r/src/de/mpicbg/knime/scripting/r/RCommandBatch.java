@@ -0,0 +1,155 @@
+package de.mpicbg.knime.scripting.r;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPGenericVector;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.RList;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * <p>
+ * queues assignments and R commands whose result is not needed and sends them to R with the next command
+ * which needs a result (or an explicit {@link #flush()}). Instead of one round trip per call, all queued values are
+ * assigned as one list and all queued commands are evaluated as one compound expression, which takes two requests
+ * if values are queued (Rserve assigns binary values by a separate request) and one request otherwise.
+ * </p>
+ * <p>
+ * Commands are executed in the order they were queued. If one of them fails, the remaining ones are skipped and
+ * the error message of R is reported by a {@link RserveException}. The hidden variables used by the batch are
+ * removed from the workspace in any case.
+ * </p>
+ */
+public class RCommandBatch {
+
+	/** hidden R variable which holds the queued values while the batch is executed */
+	private static final String VALUES_VAR = ".knime.batch";
+	/** hidden R variable which holds the result of the queued commands */
+	private static final String ERROR_VAR = ".knime.batch.err";
+	/** class of the result if one of the queued commands failed */
+	private static final String ERROR_CLASS = "knime.batch.error";
+
+	private final RConnection m_connection;
+
+	/** values to assign, referenced by index from the queued commands */
+	private final RList m_values = new RList();
+	/** queued commands */
+	private final List<String> m_commands = new ArrayList<String>();
+
+	/**
+	 * @param connection
+	 */
+	public RCommandBatch(RConnection connection) {
+		m_connection = connection;
+	}
+
+	/**
+	 * @return connection the batch is sent to
+	 */
+	public RConnection getConnection() {
+		return m_connection;
+	}
+
+	/**
+	 * queues an assignment
+	 * @param name		R variable name
+	 * @param value
+	 */
+	public void assign(String name, REXP value) {
+		m_values.add(value);
+		m_commands.add(name + " <- " + VALUES_VAR + "[[" + m_values.size() + "]]");
+	}
+
+	/**
+	 * queues the assignment of a string
+	 * @param name		R variable name
+	 * @param value
+	 */
+	public void assign(String name, String value) {
+		assign(name, new REXPString(value));
+	}
+
+	/**
+	 * queues a command (its result is dropped)
+	 * @param cmd
+	 */
+	public void voidEval(String cmd) {
+		m_commands.add(cmd);
+	}
+
+	/**
+	 * @return true, if nothing is queued
+	 */
+	public boolean isEmpty() {
+		return m_commands.isEmpty();
+	}
+
+	/**
+	 * drops all queued values and commands
+	 */
+	public void clear() {
+		m_values.clear();
+		m_commands.clear();
+	}
+
+	/**
+	 * executes the queued values and commands
+	 * @throws RserveException	if the transfer or one of the queued commands failed
+	 */
+	public void flush() throws RserveException {
+		if(isEmpty()) return;
+		execute("invisible(NULL)");
+	}
+
+	/**
+	 * executes the queued values and commands and evaluates the given command afterwards
+	 * (within the same evaluation request)
+	 * @param cmd
+	 * @return result of the command
+	 * @throws RserveException	if the transfer, one of the queued commands or the command itself failed
+	 */
+	public REXP eval(String cmd) throws RserveException {
+		if(isEmpty()) return m_connection.eval(cmd);
+		return execute(cmd);
+	}
+
+	/**
+	 * @param cmd	command evaluated after the queued ones
+	 * @return result of the command
+	 * @throws RserveException
+	 */
+	private REXP execute(String cmd) throws RserveException {
+		boolean hasValues = !m_values.isEmpty();
+		StringBuilder queued = new StringBuilder();
+		for(String c : m_commands)
+			queued.append(c).append("\n");
+
+		// the queued commands run at top level (global environment), the first error stops them;
+		// the hidden variables are removed whether the commands succeed or not
+		String batch = "tryCatch(if(!is.null(" + ERROR_VAR + " <- try({\n" + queued + "NULL\n}, silent = TRUE))) "
+				+ "structure(as.character(" + ERROR_VAR + "), class = \"" + ERROR_CLASS + "\") else {\n"
+				+ cmd + "\n}, finally = suppressWarnings(rm(list = c(\"" + VALUES_VAR + "\", \"" + ERROR_VAR + "\"), envir = globalenv())))";
+
+		try {
+			if(hasValues)
+				m_connection.assign(VALUES_VAR, new REXPGenericVector(m_values));
+			REXP result = m_connection.eval(batch);
+			if(result != null && result.inherits(ERROR_CLASS)) {
+				String msg;
+				try {
+					msg = result.asString();
+				} catch (REXPMismatchException e) {
+					msg = "unknown error";
+				}
+				throw new RserveException(m_connection, "Batched R command failed: " + msg);
+			}
+			return result;
+		} finally {
+			clear();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package de.mpicbg.knime.scripting.r;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.knime.core.node.NodeLogger;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * <p>
+ * keeps idle connections to R servers (keyed by host and port) to avoid the handshake and session setup
+ * of Rserve for each node execution, view refresh or port lookup. Pooling is opt-in (preference, default 0).
+ * </p>
+ * <p>
+ * A reused session is not pristine: attached packages, options, the working directory, graphics devices and
+ * the random number generator state set by a previous node carry over to the next one.
+ * </p>
+ * <p>
+ * A connection is cleaned up when released (all variables removed, garbage collected) and checked by a cheap
+ * evaluation before it is borrowed again. Connections idle longer than {@link #IDLE_TIMEOUT} are closed.
+ * </p>
+ */
+public class RConnectionPool {
+
+	/** idle connections older than this (ms) are closed instead of being borrowed */
+	public static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+
+	/** cleans the session before it is returned to the pool */
+	private static final String CLEANUP_CMD = "rm(list = ls(all.names = TRUE)); invisible(gc())";
+
+	/** cheap evaluation to check whether a pooled session is still alive */
+	private static final String HEALTH_CHECK_CMD = "1";
+
+	/** idle connections per host:port, most recently released first */
+	private static final Map<String, Deque<IdleConnection>> idleConnections = new HashMap<String, Deque<IdleConnection>>();
+
+	/** host:port of borrowed connections (weak keys: connections closed by the caller are not kept) */
+	private static final Map<RConnection, String> borrowedConnections = new WeakHashMap<RConnection, String>();
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(RConnectionPool.class);
+
+	private RConnectionPool() {
+		// static access only
+	}
+
+	/**
+	 * borrows an idle connection to the given server or opens a new one
+	 * @param host
+	 * @param port
+	 * @return connection which should be given back by {@link #release(RConnection, int)}
+	 * @throws RserveException	if no new connection could be established
+	 */
+	public static RConnection borrow(String host, int port) throws RserveException {
+		String key = getKey(host, port);
+
+		RConnection connection;
+		while((connection = pollIdle(key)) != null) {
+			if(isHealthy(connection))
+				break;
+			LOGGER.debug("discard broken R connection to " + key);
+			closeQuietly(connection);
+		}
+
+		if(connection == null)
+			connection = new RConnection(host, port);
+
+		synchronized (RConnectionPool.class) {
+			borrowedConnections.put(connection, key);
+		}
+		return connection;
+	}
+
+	/**
+	 * cleans the session and gives the connection back to the pool;
+	 * it is closed if the pool for its server is full, the session is broken or the connection was not borrowed
+	 * @param connection	might be null
+	 * @param maxIdle		maximum number of idle connections per server (0 disables pooling)
+	 */
+	public static void release(RConnection connection, int maxIdle) {
+		if(connection == null) return;
+
+		String key;
+		synchronized (RConnectionPool.class) {
+			key = borrowedConnections.remove(connection);
+		}
+
+		if(key == null || maxIdle <= 0 || !connection.isConnected()) {
+			closeQuietly(connection);
+			return;
+		}
+
+		try {
+			connection.voidEval(CLEANUP_CMD);
+		} catch (RserveException e) {
+			LOGGER.debug("failed to clean up R session: " + e.getMessage());
+			closeQuietly(connection);
+			return;
+		}
+
+		synchronized (RConnectionPool.class) {
+			Deque<IdleConnection> idle = idleConnections.get(key);
+			if(idle == null) {
+				idle = new ArrayDeque<IdleConnection>();
+				idleConnections.put(key, idle);
+			}
+			if(idle.size() < maxIdle) {
+				idle.addFirst(new IdleConnection(connection));
+				return;
+			}
+		}
+		closeQuietly(connection);
+	}
+
+	/**
+	 * closes all idle connections (borrowed connections are closed on release)
+	 */
+	public static void closeAll() {
+		synchronized (RConnectionPool.class) {
+			for(Deque<IdleConnection> idle : idleConnections.values()) {
+				for(IdleConnection ic : idle)
+					closeQuietly(ic.m_connection);
+			}
+			idleConnections.clear();
+			borrowedConnections.clear();
+		}
+	}
+
+	/**
+	 * evicts idle connections which timed out and returns the most recently released one
+	 * @param key
+	 * @return idle connection or null
+	 */
+	private static synchronized RConnection pollIdle(String key) {
+		Deque<IdleConnection> idle = idleConnections.get(key);
+		if(idle == null) return null;
+
+		long now = System.currentTimeMillis();
+		for(Iterator<IdleConnection> it = idle.iterator(); it.hasNext();) {
+			IdleConnection ic = it.next();
+			if(now - ic.m_idleSince > IDLE_TIMEOUT) {
+				closeQuietly(ic.m_connection);
+				it.remove();
+			}
+		}
+
+		IdleConnection ic = idle.pollFirst();
+		return ic != null ? ic.m_connection : null;
+	}
+
+	private static boolean isHealthy(RConnection connection) {
+		if(!connection.isConnected()) return false;
+		try {
+			return connection.eval(HEALTH_CHECK_CMD) != null;
+		} catch (RserveException e) {
+			return false;
+		}
+	}
+
+	private static void closeQuietly(RConnection connection) {
+		if(connection.isConnected())
+			connection.close();
+	}
+
+	private static String getKey(String host, int port) {
+		return host + ":" + port;
+	}
+
+	/**
+	 * idle connection and the time it was released
+	 */
+	private static class IdleConnection {
+		private final RConnection m_connection;
+		private final long m_idleSince;
+
+		private IdleConnection(RConnection connection) {
+			m_connection = connection;
+			m_idleSince = System.currentTimeMillis();
+		}
+	}
+}
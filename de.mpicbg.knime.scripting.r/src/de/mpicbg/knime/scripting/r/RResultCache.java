@@ -0,0 +1,372 @@
+package de.mpicbg.knime.scripting.r;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.container.ContainerTable;
+import org.knime.core.data.container.DataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.workflow.FlowVariable;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+import de.mpicbg.knime.scripting.r.port.RPortObject2;
+
+/**
+ * <p>
+ * cache of node results (output tables and R workspaces) on local disk, keyed by the MD5 hash of the node type,
+ * the content of the inputs, the prepared script, the flow variables and the R version of the server.
+ * A node which is executed again with the same key restores its outputs without running the script.
+ * </p>
+ * <p>
+ * Each result is kept in its own directory; the size of the cache is bounded, least recently used results are
+ * removed first (the modification time of a directory is updated on each hit). Hits and misses are counted
+ * for the lifetime of the application.
+ * </p>
+ */
+public class RResultCache {
+
+	/** cache directory */
+	private static final File CACHE_DIR = new File(KNIMEConstants.getKNIMETempDir(), "knime-r-result-cache");
+
+	/** entry files */
+	private static final String TABLE_FILE = "port%d.table.zip";
+	private static final String WORKSPACE_FILE = "port%d.RData";
+	private static final String CATALOGUE_FILE = "port%d.catalogue";
+
+	/** R version per server (host:port), retrieved once */
+	private static final Map<String, String> rVersions = new HashMap<String, String>();
+
+	private static long hits = 0;
+	private static long misses = 0;
+	private static long evictions = 0;
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(RResultCache.class);
+
+	private RResultCache() {
+		// static access only
+	}
+
+	/**
+	 * @param inData	input port objects of a node
+	 * @param outTypes	output port types of a node
+	 * @return true, if outputs of these types can be cached (tables and R workspaces only) and the inputs can be hashed
+	 * 			without retrieving a workspace which is only available in an R session (session affinity)
+	 */
+	public static boolean isCacheable(PortObject[] inData, PortType[] outTypes) {
+		if(outTypes.length == 0) return false;
+		for(PortType type : outTypes) {
+			if(!type.equals(BufferedDataTable.TYPE) && !type.equals(RPortObject2.TYPE))
+				return false;
+			// storing the result would write the workspace of the kept R session
+			if(type.equals(RPortObject2.TYPE) && RUtils.getSessionAffinity())
+				return false;
+		}
+		for(PortObject inPort : inData) {
+			if(inPort instanceof RPortObject2 && ((RPortObject2) inPort).isSessionOnly())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param nodeType		identifies the node implementation
+	 * @param inData		input port objects (tables are hashed by content, workspaces by file content,
+	 * 						see {@link #isCacheable(PortObject[], PortType[])})
+	 * @param script		prepared script
+	 * @param flowVariables
+	 * @param options		further settings which change the result
+	 * @param exec
+	 * @return cache key
+	 * @throws IOException
+	 * @throws KnimeScriptingException		if the R version could not be retrieved
+	 * @throws CanceledExecutionException
+	 */
+	public static String createKey(String nodeType, PortObject[] inData, String script, Map<String, FlowVariable> flowVariables,
+			String options, ExecutionMonitor exec) throws IOException, KnimeScriptingException, CanceledExecutionException {
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+
+		update(md5, nodeType);
+		update(md5, getRVersion());
+		update(md5, options);
+		update(md5, script);
+
+		for(FlowVariable flowVar : new TreeMap<String, FlowVariable>(flowVariables).values()) {
+			update(md5, flowVar.getName());
+			update(md5, flowVar.getType().toString());
+			update(md5, flowVar.getValueAsString());
+		}
+
+		for(PortObject inPort : inData) {
+			if(inPort == null) {
+				update(md5, "null");
+			} else if(inPort instanceof BufferedDataTable) {
+				updateTable(md5, (BufferedDataTable) inPort, exec);
+			} else if(inPort instanceof RPortObject2) {
+				update(md5, RWorkspaceCache.getKey(((RPortObject2) inPort).getFile()));
+			} else {
+				// unknown port content
+				update(md5, inPort.getClass().getName() + "@" + System.identityHashCode(inPort));
+			}
+		}
+
+		StringBuilder hash = new StringBuilder();
+		for(byte b : md5.digest())
+			hash.append(String.format("%02x", b));
+		return hash.toString();
+	}
+
+	/**
+	 * restores the outputs of a cached result
+	 * @param key		see {@link #createKey}
+	 * @param outTypes	output port types of the node
+	 * @param exec		to create the output tables
+	 * @return output port objects or null if the result is not cached
+	 * @throws CanceledExecutionException
+	 */
+	public static PortObject[] load(String key, PortType[] outTypes, ExecutionContext exec) throws CanceledExecutionException {
+		File entry = new File(CACHE_DIR, key);
+		if(!entry.isDirectory()) {
+			countMiss();
+			return null;
+		}
+
+		PortObject[] outData = new PortObject[outTypes.length];
+		try {
+			for(int i = 0; i < outTypes.length; i++) {
+				if(outTypes[i].equals(BufferedDataTable.TYPE)) {
+					ContainerTable table = DataContainer.readFromZip(new File(entry, String.format(TABLE_FILE, i)));
+					outData[i] = exec.createBufferedDataTable(table, exec);
+				} else {
+					File wsFile = File.createTempFile("genericR", ".RData");
+					Files.copy(new File(entry, String.format(WORKSPACE_FILE, i)).toPath(), wsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(new File(entry, String.format(CATALOGUE_FILE, i))))) {
+						@SuppressWarnings("unchecked")
+						HashMap<String, String> objects = (HashMap<String, String>) ois.readObject();
+						@SuppressWarnings("unchecked")
+						HashMap<String, Long> sizes = (HashMap<String, Long>) ois.readObject();
+						outData[i] = new RPortObject2(wsFile, objects, sizes);
+					}
+				}
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			// incomplete or corrupt entry, the node is executed again
+			LOGGER.debug("failed to restore cached result " + key + ": " + e.getMessage());
+			delete(entry);
+			countMiss();
+			return null;
+		}
+
+		entry.setLastModified(System.currentTimeMillis());
+		synchronized (RResultCache.class) {
+			hits++;
+		}
+		LOGGER.info("restored result from cache (" + getStatistics() + ")");
+		return outData;
+	}
+
+	/**
+	 * stores the outputs of a node and removes least recently used results if the cache exceeds its maximum size
+	 * (the new result is always kept)
+	 * @param key		see {@link #createKey}
+	 * @param outData	output port objects
+	 * @param maxBytes	maximum size of the cache directory
+	 * @param exec
+	 * @throws IOException
+	 * @throws CanceledExecutionException
+	 */
+	public static void store(String key, PortObject[] outData, long maxBytes, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		CACHE_DIR.mkdirs();
+		// write into a temporary directory first, an entry is either complete or missing
+		File tmpEntry = Files.createTempDirectory(CACHE_DIR.toPath(), key + "_").toFile();
+		try {
+			for(int i = 0; i < outData.length; i++) {
+				if(outData[i] instanceof BufferedDataTable) {
+					DataContainer.writeToZip((BufferedDataTable) outData[i], new File(tmpEntry, String.format(TABLE_FILE, i)), exec);
+				} else if(outData[i] instanceof RPortObject2) {
+					RPortObject2 port = (RPortObject2) outData[i];
+					Files.copy(port.getFile().toPath(), new File(tmpEntry, String.format(WORKSPACE_FILE, i)).toPath());
+					try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(new File(tmpEntry, String.format(CATALOGUE_FILE, i))))) {
+						oos.writeObject(port.getRObjects());
+						oos.writeObject(port.getRObjectSizes());
+					}
+				} else {
+					throw new IOException("Output type not supported by the result cache: " + outData[i]);
+				}
+			}
+
+			File entry = new File(CACHE_DIR, key);
+			synchronized (RResultCache.class) {
+				delete(entry);
+				if(!tmpEntry.renameTo(entry))
+					throw new IOException("Failed to move result into cache: " + entry.getAbsolutePath());
+				evict(entry, maxBytes);
+			}
+		} finally {
+			delete(tmpEntry);
+		}
+	}
+
+	/**
+	 * @return hits, misses and evictions since the start of the application
+	 */
+	public static synchronized String getStatistics() {
+		long total = hits + misses;
+		return "R result cache: " + hits + " hit(s), " + misses + " miss(es)"
+				+ (total > 0 ? " (" + (100 * hits / total) + "% hits)" : "") + ", " + evictions + " eviction(s)";
+	}
+
+	/**
+	 * removes least recently used entries until the cache fits into the given size
+	 * @param keep		entry which is never removed
+	 * @param maxBytes
+	 */
+	private static void evict(File keep, long maxBytes) {
+		File[] entries = CACHE_DIR.listFiles();
+		if(entries == null) return;
+
+		List<File> sorted = new ArrayList<File>(Arrays.asList(entries));
+		// most recently used first
+		Collections.sort(sorted, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return Long.compare(f2.lastModified(), f1.lastModified());
+			}
+		});
+
+		long total = sizeOf(keep);
+		for(File entry : sorted) {
+			if(entry.equals(keep) || !entry.isDirectory() || entry.getName().contains("_")) continue;
+			total += sizeOf(entry);
+			if(total > maxBytes) {
+				delete(entry);
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * @return version of the configured R server (retrieved once per server)
+	 * @throws KnimeScriptingException
+	 */
+	private static String getRVersion() throws KnimeScriptingException {
+		String server = RUtils.getHost() + ":" + RUtils.getPort();
+		synchronized (rVersions) {
+			String version = rVersions.get(server);
+			if(version != null) return version;
+		}
+
+		RConnection connection = RUtils.createConnection();
+		String version;
+		try {
+			version = connection.eval("R.version.string").asString();
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Failed to retrieve the R version: " + e.getMessage());
+		} finally {
+			RUtils.releaseConnection(connection);
+		}
+
+		synchronized (rVersions) {
+			rVersions.put(server, version);
+		}
+		return version;
+	}
+
+	/**
+	 * hashes spec and content (row keys and cell values) of a table
+	 * @param md5
+	 * @param table
+	 * @param exec
+	 * @throws CanceledExecutionException
+	 */
+	private static void updateTable(MessageDigest md5, BufferedDataTable table, ExecutionMonitor exec) throws CanceledExecutionException {
+		for(DataColumnSpec cSpec : table.getDataTableSpec()) {
+			update(md5, cSpec.getName());
+			update(md5, cSpec.getType().toString());
+		}
+
+		long rowIdx = 0;
+		for(DataRow row : table) {
+			if(rowIdx++ % 1000 == 0)
+				exec.checkCanceled();
+			update(md5, row.getKey().getString());
+			for(DataCell cell : row)
+				update(md5, cell.isMissing() ? "\u0000?" : cell.toString());
+		}
+		update(md5, String.valueOf(rowIdx));
+	}
+
+	/**
+	 * adds a length-prefixed string to the digest (no ambiguity between concatenated values)
+	 * @param md5
+	 * @param value
+	 */
+	private static void update(MessageDigest md5, String value) {
+		byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+		int len = bytes.length;
+		md5.update(new byte[] {(byte) (len >>> 24), (byte) (len >>> 16), (byte) (len >>> 8), (byte) len});
+		md5.update(bytes);
+	}
+
+	/**
+	 * @param dir
+	 * @return size of all files of a directory (not recursive, entries have no sub directories)
+	 */
+	private static long sizeOf(File dir) {
+		long size = 0;
+		File[] files = dir.listFiles();
+		if(files != null)
+			for(File f : files) size += f.length();
+		return size;
+	}
+
+	/**
+	 * deletes an entry directory and its files, failures are ignored
+	 * @param dir
+	 */
+	private static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if(files != null)
+			for(File f : files) f.delete();
+		dir.delete();
+	}
+
+	private static synchronized void countMiss() {
+		misses++;
+	}
+}
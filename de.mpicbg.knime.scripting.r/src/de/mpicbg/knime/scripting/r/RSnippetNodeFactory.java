@@ -52,7 +52,14 @@ public class RSnippetNodeFactory extends NodeFactory<RSnippetNodeModel> {
      */
     @Override
     public NodeDialogPane createNodeDialogPane() {
-        return new RSnippetNodeDialog(AbstractRScriptingNodeModel.CFG_SCRIPT_DFT, true);
+        return new RSnippetNodeDialog(AbstractRScriptingNodeModel.CFG_SCRIPT_DFT, true, true, true, useStreamingSettings());
+    }
+
+    /**
+     * @return TRUE, if the node model provides the streaming settings (see {@link RSnippetNodeModel#RSnippetNodeModel()})
+     */
+    protected boolean useStreamingSettings() {
+        return true;
     }
 }
 
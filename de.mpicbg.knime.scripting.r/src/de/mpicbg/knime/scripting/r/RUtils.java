@@ -3,28 +3,27 @@ package de.mpicbg.knime.scripting.r;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnDomainCreator;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
-import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
 import org.knime.core.data.IntValue;
@@ -36,6 +35,7 @@ import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
 import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPInteger;
 import org.rosuda.REngine.REXPLogical;
@@ -45,6 +45,7 @@ import org.rosuda.REngine.REXPVector;
 import org.rosuda.REngine.REngineException;
 import org.rosuda.REngine.RList;
 import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RFileInputStream;
 import org.rosuda.REngine.Rserve.RserveException;
 
 import de.mpicbg.knime.knutils.Utils;
@@ -64,7 +65,16 @@ public class RUtils {
 
     public static int MAX_FACTOR_LEVELS = 500;
 
+    /** buffer size (bytes) for file transfers from/to the R server */
+    private static final int TRANSFER_BUFFER_SIZE = 1024 * 1024;
+
+    /** see {@link #getCompression(File)} */
+    public static final String COMPRESSION_NONE = "none";
+
     /**
+     * converts a data frame received from R into a KNIME table; rows are created one by one from the
+     * column vectors and the domain is collected meanwhile (string domains up to {@link #MAX_FACTOR_LEVELS} values),
+     * so no cell matrix of the whole table is built
      * @deprecated
      * @param exec
      * @param rexp
@@ -75,141 +85,163 @@ public class RUtils {
         try {
             RList rList = rexp.asList();
 
+            String[] colKeys = rList.keys();
+            int numCols = colKeys.length;
 
-            // create attributes
-            DataColumnSpec[] colSpecs = new DataColumnSpec[rList.keySet().size()];
-            Map<DataColumnSpec, REXPVector> columnData = new HashMap<DataColumnSpec, REXPVector>();
-            Map<DataColumnSpec, Integer> colIndices = new HashMap<DataColumnSpec, Integer>();
-
-            ArrayList colKeys = new ArrayList(Arrays.asList(rList.keys()));
-
-//            long timeBefore = System.currentTimeMillis();
+            // create attributes and fetch the primitive column data
+            DataColumnSpec[] colSpecs = new DataColumnSpec[numCols];
+            boolean[][] isNA = new boolean[numCols][];
+            int[][] intData = new int[numCols][];
+            double[][] doubleData = new double[numCols][];
+            String[][] stringData = new String[numCols][];
+            DataCell[][] levelCells = new DataCell[numCols][];
 
+            for (int attrCounter = 0; attrCounter < numCols; attrCounter++) {
+                String columnName = colKeys[attrCounter];
+                REXPVector column = (REXPVector) rList.get(columnName);
 
-            for (int attrCounter = 0; attrCounter < colKeys.size(); attrCounter++) {
-                Object columnKey = colKeys.get(attrCounter);
-                REXPVector column = (REXPVector) rList.get(columnKey);
-
-                assert columnKey instanceof String : " key is not a string";
-                String columnName = columnKey.toString();
+                DataType colType;
+                if (column.isFactor()) {
+                    colType = StringCell.TYPE;
+                    intData[attrCounter] = column.asIntegers();
+
+                    // one cell per level, shared by all rows of this level
+                    String[] levels = column.asFactor().levels();
+                    levelCells[attrCounter] = new DataCell[levels.length];
+                    for (int l = 0; l < levels.length; l++) {
+                        levelCells[attrCounter][l] = levels[l] == null || levels[l].equals(RDataFrameContainer.NA_VAL_FOR_R) ?
+                                DataType.getMissingCell() : new StringCell(levels[l]);
+                    }
 
+                } else if (column.isString()) {
+                    colType = StringCell.TYPE;
+                    stringData[attrCounter] = column.asStrings();
 
-                if (column.isFactor()) {
-                    colSpecs[attrCounter] = new DataColumnSpecCreator(columnName, StringCell.TYPE).createSpec();
+                } else if (column.isLogical()) {
+                    // there's no boolean-cell-type in knime, thus we use int
+                    colType = IntCell.TYPE;
+                    intData[attrCounter] = column.asIntegers();
 
                 } else if (column.isNumeric()) {
-                    DataType numColType = DoubleCell.TYPE;
+                    colType = DoubleCell.TYPE;
                     if (typeMapping != null && typeMapping.containsKey(columnName)) {
-                        numColType = typeMapping.get(columnName);
+                        colType = typeMapping.get(columnName);
                     }
 
-                    colSpecs[attrCounter] = new DataColumnSpecCreator(columnName, numColType).createSpec();
-
-                } else if (column.isString()) {
-                    colSpecs[attrCounter] = new DataColumnSpecCreator(columnName, StringCell.TYPE).createSpec();
-
-                } else if (column.isLogical()) {
-                    colSpecs[attrCounter] = new DataColumnSpecCreator(columnName, IntCell.TYPE).createSpec();
-                    //                    colSpecs[specCounter] = new DataColumnSpecCreator(columnName, LogicalCell.TYPE).createSpec();
+                    if (colType.isCompatible(IntValue.class)) {
+                        intData[attrCounter] = column.asIntegers();
+                    } else {
+                        doubleData[attrCounter] = column.asDoubles();
+                    }
 
                 } else {
-                    throw new RuntimeException("column type not supported");
+                    throw new RuntimeException("Unexpected type data-frame that has been received from R: " + columnName);
                 }
 
-                DataColumnSpec curSpecs = colSpecs[attrCounter];
-
-                columnData.put(curSpecs, column);
-                colIndices.put(curSpecs, attrCounter);
+                colSpecs[attrCounter] = new DataColumnSpecCreator(columnName, colType).createSpec();
+                isNA[attrCounter] = column.isNA();
             }
 
-//            NodeLogger.getLogger(RUtils.class).warn(rexp.toString() + "- Time between (R->knime) 1: " + (double) (System.currentTimeMillis() - timeBefore) / 1000);
-
+            // domain collectors
+            @SuppressWarnings("unchecked")
+            LinkedHashSet<DataCell>[] stringDomains = new LinkedHashSet[numCols];
+            boolean[][] usedLevels = new boolean[numCols][];
+            double[] lowerBounds = new double[numCols];
+            double[] upperBounds = new double[numCols];
+            boolean[] hasBounds = new boolean[numCols];
+
+            for (int j = 0; j < numCols; j++) {
+                if (levelCells[j] != null) {
+                    usedLevels[j] = new boolean[levelCells[j].length];
+                } else if (stringData[j] != null) {
+                    stringDomains[j] = new LinkedHashSet<DataCell>();
+                }
+            }
 
             // create examples
-            DataTableSpec outputSpec = new DataTableSpec(colSpecs);
-            BufferedDataContainer container = exec.createDataContainer(outputSpec);
-            int numExamples = columnData.isEmpty() ? -1 : columnData.values().iterator().next().length();
-
-            DataCell[][] cells = new DataCell[numExamples][colIndices.size()];
-
-            List<DataColumnSpec> domainSpecs = new ArrayList<DataColumnSpec>();
+            BufferedDataContainer container = exec.createDataContainer(new DataTableSpec(colSpecs));
+            int numExamples = numCols == 0 ? 0 : isNA[0].length;
 
-            for (DataColumnSpec colSpec : colSpecs) {
-                REXPVector curColumn = columnData.get(colSpec);
-                int colIndex = colIndices.get(colSpec);
+            for (int i = 0; i < numExamples; i++) {
+                DataCell[] cells = new DataCell[numCols];
+
+                for (int j = 0; j < numCols; j++) {
+                    if (isNA[j][i]) {
+                        cells[j] = DataType.getMissingCell();
+
+                    } else if (levelCells[j] != null) {
+                        // factor codes are 1-based
+                        int level = intData[j][i] - 1;
+                        cells[j] = levelCells[j][level];
+                        usedLevels[j][level] = true;
+
+                    } else if (stringData[j] != null) {
+                        String value = stringData[j][i];
+                        if (value.equals(RDataFrameContainer.NA_VAL_FOR_R)) {
+                            cells[j] = DataType.getMissingCell();
+                        } else {
+                            StringCell stringCell = new StringCell(value);
+                            updateDomain(stringDomains[j], stringCell);
+                            cells[j] = stringCell;
+                        }
 
-                DataColumnSpecCreator specCreator = new DataColumnSpecCreator(colSpec.getName(), colSpec.getType());
-                boolean[] isNA = curColumn.isNA();
+                    } else {
+                        double value;
+                        if (intData[j] != null) {
+                            value = intData[j][i];
+                            cells[j] = new IntCell(intData[j][i]);
+                        } else {
+                            value = doubleData[j][i];
+                            cells[j] = new DoubleCell(value);
+                        }
 
+                        if (!Double.isNaN(value)) {
+                            if (!hasBounds[j] || value < lowerBounds[j]) lowerBounds[j] = value;
+                            if (!hasBounds[j] || value > upperBounds[j]) upperBounds[j] = value;
+                            hasBounds[j] = true;
+                        }
+                    }
+                }
 
-                if (curColumn.isString() || curColumn.isFactor()) {
-                    String[] stringColumn = curColumn.asStrings();
+                container.addRowToTable(new DefaultRow(new RowKey("" + i), cells));
 
-                    LinkedHashSet<DataCell> domain = new LinkedHashSet<DataCell>();
+                if (i % 1000 == 0) {
+                    exec.setProgress(i / (double) numExamples, "Adding row " + i);
+                }
+            }
 
-                    for (int i = 0; i < numExamples; i++) {
-                        if (isNA[i] || stringColumn[i].equals(RDataFrameContainer.NA_VAL_FOR_R)) {
-                            cells[i][colIndex] = DataType.getMissingCell();
+            container.close();
 
-                        } else {
-                            StringCell stringCell = new StringCell(stringColumn[i]);
-                            updateDomain(domain, stringCell);
+            // attach the collected domain
+            DataColumnSpec[] domainSpecs = new DataColumnSpec[numCols];
+            for (int j = 0; j < numCols; j++) {
+                DataColumnSpecCreator specCreator = new DataColumnSpecCreator(colSpecs[j]);
 
-                            cells[i][colIndex] = stringCell;
-                        }
+                if (levelCells[j] != null) {
+                    LinkedHashSet<DataCell> domain = new LinkedHashSet<DataCell>();
+                    for (int l = 0; l < levelCells[j].length; l++) {
+                        if (usedLevels[j][l] && !levelCells[j][l].isMissing()) domain.add(levelCells[j][l]);
                     }
-
                     if (domain.size() < MAX_FACTOR_LEVELS) {
                         specCreator.setDomain(new DataColumnDomainCreator(domain).createDomain());
                     }
 
-                } else if (colSpec.getType().isCompatible(IntValue.class) || curColumn.isLogical()) {    // there's no boolean-cell-type in knime, thus we use int
-                    int[] intColumn = curColumn.asIntegers();
-
-                    for (int i = 0; i < numExamples; i++) {
-                        cells[i][colIndex] = isNA[i] ? DataType.getMissingCell() : new IntCell(intColumn[i]);
-                    }
-
-                } else if (curColumn.isNumeric()) {
-                    double[] doubleColumn = curColumn.asDoubles();
-
-                    for (int i = 0; i < numExamples; i++) {
-                        cells[i][colIndex] = isNA[i] ? DataType.getMissingCell() : new DoubleCell(doubleColumn[i]);
+                } else if (stringDomains[j] != null) {
+                    if (stringDomains[j].size() < MAX_FACTOR_LEVELS) {
+                        specCreator.setDomain(new DataColumnDomainCreator(stringDomains[j]).createDomain());
                     }
 
-
-                } else {
-                    throw new RuntimeException("Unexpected type data-frame that has been received from R: " + colSpec.getName());
+                } else if (hasBounds[j]) {
+                    boolean isInt = intData[j] != null;
+                    DataCell lower = isInt ? new IntCell((int) lowerBounds[j]) : new DoubleCell(lowerBounds[j]);
+                    DataCell upper = isInt ? new IntCell((int) upperBounds[j]) : new DoubleCell(upperBounds[j]);
+                    specCreator.setDomain(new DataColumnDomainCreator(lower, upper).createDomain());
                 }
 
-                //  maybe we have to treat other types here
-
-                domainSpecs.add(specCreator.createSpec());
+                domainSpecs[j] = specCreator.createSpec();
             }
 
-
-//            NodeLogger.getLogger(RUtils.class).warn(rexp.toString() + "- Time danach (R->knime) 2: " + (double) (System.currentTimeMillis() - timeBefore) / 1000);
-
-
-            for (int i = 0; i < numExamples; i++) {
-                RowKey key = new RowKey("" + i);
-
-                DataRow row = new DefaultRow(key, cells[i]);
-                container.addRowToTable(row);
-            }
-
-//            NodeLogger.getLogger(RUtils.class).warn(rexp.toString() + "- Time danach (R->knime) 3: " + (double) (System.currentTimeMillis() - timeBefore) / 1000);
-
-
-//            exec.checkCanceled();
-//            exec.setProgress(i / (double)m_count.getIntValue(), "Adding row " + i);
-
-//        // once we are done, we close the container and return its table
-            container.close();
-
-            DataTableSpec domainDataTableSpec = new DataTableSpec(domainSpecs.toArray(new DataColumnSpec[domainSpecs.size()]));
-
-            return exec.createSpecReplacerTable(container.getTable(), domainDataTableSpec);
+            return exec.createSpecReplacerTable(container.getTable(), new DataTableSpec(domainSpecs));
         } catch (REXPMismatchException e) {
             throw new RuntimeException(e);
         }
@@ -228,7 +260,8 @@ public class RUtils {
     }
 
     /**
-     * create new connection to R server
+     * borrow a connection to R server from the connection pool (opens a new one if none is idle),
+     * give it back by {@link #releaseConnection(RConnection)}
      * @return
      * @throws KnimeScriptingException
      */
@@ -238,13 +271,22 @@ public class RUtils {
         int port = getPort();
         
         try {
-            return new RConnection(host, port);
+            return RConnectionPool.borrow(host, port);
         } catch (RserveException e) {
         	e.printStackTrace();
         	throw new KnimeScriptingException("Could not connect to R. Probably, the R-Server is not running.\nHere's what you need to do:\n 1) Check what R-server-host is configured in your Knime preferences.\n 2) If your host is set to be 'localhost' start R and run the following command\n library(Rserve); Rserve(args = \"--vanilla\")");
         }
     }
 
+    /**
+     * clean up the session of a connection created by {@link #createConnection()} and give it back to the connection pool
+     * (closes it if pooling is disabled or the pool is full)
+     * @param connection	might be null
+     */
+    public static void releaseConnection(RConnection connection) {
+        RConnectionPool.release(connection, getConnectionPoolSize());
+    }
+
     /**
      * @return host setting from R-scripting preferences
      */
@@ -259,6 +301,90 @@ public class RUtils {
         return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_PORT);
     }
 
+    /**
+     * @return memory budget (in bytes) to buffer table data pushed to R, from R-scripting preferences
+     */
+    public static long getTransferMemoryBudget() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_TRANSFER_MEMORY_BUDGET) * 1024L * 1024L;
+    }
+
+    /**
+     * @return target size (in bytes) of a single message to/from R used for adaptive chunking, from R-scripting preferences
+     */
+    public static long getTransferMessageSize() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_TRANSFER_MESSAGE_SIZE) * 1024L * 1024L;
+    }
+
+    /**
+     * @return true, if uncompressed workspace files should be compressed for the upload to R, from R-scripting preferences
+     */
+    public static boolean getUploadCompression() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.R_UPLOAD_COMPRESSION);
+    }
+
+    /**
+     * @return maximum size (bytes) of the workspace cache on the R server (0 = no cache), from R-scripting preferences
+     */
+    public static long getWorkspaceCacheSize() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_WORKSPACE_CACHE_SIZE) * 1024L * 1024L;
+    }
+
+    /**
+     * @return true, if nodes with generic R output should keep their R session for downstream nodes, from R-scripting preferences
+     */
+    public static boolean getSessionAffinity() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.R_SESSION_AFFINITY);
+    }
+
+    /**
+     * @return true, if only the input columns referenced by the script should be pushed to R, from R-scripting preferences
+     */
+    public static boolean getColumnProjection() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.R_COLUMN_PROJECTION);
+    }
+
+    /**
+     * @return true, if low cardinality string columns should be kept as factors in R, from R-scripting preferences
+     */
+    public static boolean getStringsAsFactors() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.R_STRINGS_AS_FACTORS);
+    }
+
+    /**
+     * @return maximum size (bytes) of the local cache of node results (0 = no cache), from R-scripting preferences
+     */
+    public static long getResultCacheSize() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_RESULT_CACHE_SIZE) * 1024L * 1024L;
+    }
+
+    /**
+     * @return compression of saved R workspaces, from R-scripting preferences (see RPreferenceInitializer.WS_FORMAT_*)
+     */
+    public static String getWorkspaceFormat() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getString(RPreferenceInitializer.R_WORKSPACE_FORMAT);
+    }
+
+    /**
+     * @return arguments of save.image for the workspace format of the preferences (starting with ', ')
+     */
+    private static String getSaveArguments() {
+        String format = getWorkspaceFormat();
+        if(format.equals(RPreferenceInitializer.WS_FORMAT_NONE))
+            return ", compress = FALSE";
+        if(format.equals(RPreferenceInitializer.WS_FORMAT_FAST))
+            return ", compress = \"gzip\", compression_level = 1";
+        if(format.equals(RPreferenceInitializer.WS_FORMAT_XZ))
+            return ", compress = \"xz\"";
+        return "";
+    }
+
+    /**
+     * @return maximum number of idle connections kept per R server, from R-scripting preferences
+     */
+    public static int getConnectionPoolSize() {
+        return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_CONNECTION_POOL_SIZE);
+    }
+
     /**
      * @deprecated
      * @param varFileMapping
@@ -276,9 +402,9 @@ public class RUtils {
             // mirror the ws-file on the server side
             connection.voidEval("tmpwfile <- 'tempRws';");
             connection.voidEval("file.create(tmpwfile);");
-            File serverWSFile = new File(connection.eval("tmpwfile").asString());
+            String serverWSFile = connection.eval("tmpwfile").asString();
 
-            writeFile(varFileMapping.get(varName), serverWSFile, connection);
+            writeFile(varFileMapping.get(varName), serverWSFile, connection, getUploadCompression());
 
             // load the workspace on the server side
             connection.voidEval("load(tmpwfile);");
@@ -304,28 +430,119 @@ public class RUtils {
     }
 
     /**
-     * write local workspace to remote workspace
+     * write local workspace to remote workspace in blocks of {@link #TRANSFER_BUFFER_SIZE} bytes;
+     * uncompressed files are gzipped on the fly if requested (R loads them transparently)
      * @param wsFile
-     * @param serverWSFile
+     * @param serverFile	file name on server side
      * @param connection
+     * @param compress		TRUE, to gzip an uncompressed file (see R-scripting preferences)
+     * @throws IOException	if the transfer failed or the file on server side does not have the expected size
      */
-    private static void writeFile(File wsFile, File serverWSFile, RConnection connection) {
-        try {
-            assert wsFile.isFile();
+    private static void writeFile(File wsFile, String serverFile, RConnection connection, boolean compress) throws IOException {
+        assert wsFile.isFile();
 
-            InputStream is = new BufferedInputStream(new FileInputStream(wsFile));
-            OutputStream os = new BufferedOutputStream(connection.createFile(serverWSFile.getPath()));
+        compress = compress && !isCompressed(wsFile);
+        byte[] buf = new byte[TRANSFER_BUFFER_SIZE];
+        long read = 0;
+        CountingOutputStream counter = new CountingOutputStream(connection.createFile(serverFile));
 
-            byte[] buf = new byte[1024];
+        try (InputStream is = new FileInputStream(wsFile);
+        		OutputStream os = compress ? new FastGZIPOutputStream(counter) : counter) {
             int len;
             while ((len = is.read(buf)) > 0) {
                 os.write(buf, 0, len);
+                read += len;
             }
+        }
 
-            is.close();
-            os.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (read != wsFile.length())
+            throw new IOException("Read " + read + " of " + wsFile.length() + " bytes of " + wsFile.getAbsolutePath());
+
+        // verify the size of the file on server side
+        long serverSize;
+        try {
+            serverSize = (long) connection.eval("file.size(\"" + serverFile.replace("\\", "\\\\") + "\")").asDouble();
+        } catch (RserveException | REXPMismatchException e) {
+            throw new IOException("Failed to check the size of " + serverFile + ": " + e.getMessage());
+        }
+        if (serverSize != counter.getCount())
+            throw new IOException("Uploaded " + serverSize + " of " + counter.getCount() + " bytes to " + serverFile);
+    }
+
+    /**
+     * @param file
+     * @return true, if the file starts with a gzip, bzip2 or xz header
+     * @throws IOException
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        return !getCompression(file).equals(COMPRESSION_NONE);
+    }
+
+    /**
+     * @param file
+     * @return compression of the file by its header: "gzip", "bzip2", "xz" or "none"
+     * @throws IOException
+     */
+    public static String getCompression(File file) throws IOException {
+        byte[] header = new byte[6];
+        int len;
+        try (InputStream is = new FileInputStream(file)) {
+            len = is.read(header);
+        }
+        if (len >= 2 && header[0] == (byte) 0x1f && header[1] == (byte) 0x8b)
+            return "gzip";
+        if (len >= 3 && header[0] == 'B' && header[1] == 'Z' && header[2] == 'h')
+            return "bzip2";
+        if (len >= 6 && header[0] == (byte) 0xfd && header[1] == '7' && header[2] == 'z' 
+        		&& header[3] == 'X' && header[4] == 'Z' && header[5] == 0)
+            return "xz";
+        return COMPRESSION_NONE;
+    }
+
+    /**
+     * @param host
+     * @return true, if the host refers to this machine
+     */
+    public static boolean isLocalHost(String host) {
+        return host.equals("localhost") || host.equals("127.0.0.1");
+    }
+
+    /**
+     * counts the bytes written to the underlying stream
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long m_count = 0;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            m_count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            m_count += len;
+        }
+
+        private long getCount() {
+            return m_count;
+        }
+    }
+
+    /**
+     * gzip stream with fastest compression level (transfer speed matters more than file size)
+     */
+    private static class FastGZIPOutputStream extends GZIPOutputStream {
+
+        private FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, TRANSFER_BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
         }
     }
 
@@ -487,21 +704,15 @@ public class RUtils {
 			throws RserveException, REXPMismatchException {
 		
 		ArrayList<String> warnMessages = new ArrayList<String>();
-		if (((REXPLogical) connection.eval("exists(\"knime.eval.obj\")")).isFALSE()[0])
-			return warnMessages;
 		
-		//check for warnings
-    	int[] warnIdx = ((REXPInteger) connection.eval("which(sapply(knime.eval.obj, inherits, \"warning\") == TRUE, arr.ind = TRUE)")).asIntegers();
-    	if(warnIdx.length > 0) {
-    		for(int i=0; i < warnIdx.length; i++){
-    			String singleWarning;
-    			REXPString warn = (REXPString) connection.eval("deparse(knime.eval.obj[[" + warnIdx[i] + "]]$call)");
-    			singleWarning = warn.asString() + " : ";
-    			warn = (REXPString) connection.eval("knime.eval.obj[[" + warnIdx[i] + "]]$message");
-    			singleWarning = singleWarning + warn.asString() + "\n";
-    			warnMessages.add(singleWarning);
-    		}
-    	}
+		//check for warnings (formatted on R side to need a single round trip)
+		REXP warn = connection.eval("if(!exists(\"knime.eval.obj\")) character(0) else "
+				+ "vapply(Filter(function(x) inherits(x, \"warning\"), knime.eval.obj), "
+				+ "function(x) paste0(deparse(x$call)[1], \" : \", x$message, \"\\n\"), \"\")");
+		if(warn.isString()) {
+			for(String singleWarning : warn.asStrings())
+				warnMessages.add(singleWarning);
+		}
     	return warnMessages;
 	}
 	
@@ -546,54 +757,130 @@ public class RUtils {
 	 * @param host
 	 * @throws KnimeScriptingException 
 	 */
-	public static void saveWorkspaceToFile(File rWorkspaceFile, RConnection connection, String host) throws KnimeScriptingException 
+	public static void saveWorkspaceToFile(File rWorkspaceFile, RConnection connection, String host) throws KnimeScriptingException {
+		saveWorkspaceToFile(rWorkspaceFile, connection, host, null);
+	}
+
+	/**
+	 * save R workspace to file; for remote hosts the workspace file is streamed to the local file
+	 * @param rWorkspaceFile needs to have '/' as folder separator
+	 * @param connection
+	 * @param host
+	 * @param exec	reports the progress of the download from remote hosts (might be null)
+	 * @throws KnimeScriptingException 
+	 */
+	public static void saveWorkspaceToFile(File rWorkspaceFile, RConnection connection, String host, ExecutionMonitor exec) 
+			throws KnimeScriptingException 
 	{
 		assert host != null;
 		// (Do not create new R objects in workspace before saving!)
 
-		if(host.equals("localhost") || host.equals("127.0.0.1")) {
+		if(isLocalHost(host)) {
 			// save workspace to local file
 			try {
-				connection.voidEval("save.image(file=\"" + rWorkspaceFile.getAbsolutePath().replace("\\", "/") + "\")");
+				connection.voidEval("save.image(file=\"" + rWorkspaceFile.getAbsolutePath().replace("\\", "/") + "\"" + getSaveArguments() + ")");
 			} catch (RserveException e) {
 				throw new KnimeScriptingException("Failed to save R workspace: " + e.getMessage());
 			}
 		} else {
+			downloadWorkspaceFile(saveWorkspaceOnServer(connection), rWorkspaceFile, connection, exec);
+		}
+	}
+
+	/**
+	 * save R workspace to a temporary file on server side
+	 * @param connection
+	 * @return file name on server side
+	 * @throws KnimeScriptingException
+	 */
+	public static String saveWorkspaceOnServer(RConnection connection) throws KnimeScriptingException {
+		// (Do not create new R objects in workspace before saving!)
+		try {
 			// create temporary file name on server side 
-			String tempfile = null;
-			try {
-				tempfile = ((REXPString) connection.eval("tempfile(pattern = \"R-ws-\");")).asString();
-				tempfile = tempfile.replace("\\", "\\\\");
-				connection.voidEval("unlink(\"" + tempfile + "\")");
-				// save R workspace 
-				connection.voidEval("save.image(file=\"" + tempfile + "\")");
-			} catch (RserveException | REXPMismatchException e) {
-				throw new KnimeScriptingException("Failed to save R workspace: " + e.getMessage());
-			}
+			String tempfile = ((REXPString) connection.eval("tempfile(pattern = \"R-ws-\");")).asString();
+			String tempfileR = tempfile.replace("\\", "\\\\");
+			connection.voidEval("unlink(\"" + tempfileR + "\")");
+			// save R workspace 
+			connection.voidEval("save.image(file=\"" + tempfileR + "\"" + getSaveArguments() + ")");
+			return tempfile;
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Failed to save R workspace: " + e.getMessage());
+		}
+	}
 
-			// if the file already exists, delete it
-			if (rWorkspaceFile.isFile())
-				rWorkspaceFile.delete();
+	/**
+	 * streams a workspace file from the R server to a local file and deletes the server file afterwards
+	 * (it is kept in the workspace cache on server side if enabled)
+	 * @param serverFile	file name on server side
+	 * @param localFile		overwritten if it exists
+	 * @param connection
+	 * @param exec			reports the progress of the download (might be null)
+	 * @throws KnimeScriptingException
+	 */
+	public static void downloadWorkspaceFile(String serverFile, File localFile, RConnection connection, ExecutionMonitor exec) 
+			throws KnimeScriptingException {
+		String serverFileR = serverFile.replace("\\", "\\\\");
+		try {
+			long fileSize = (long) connection.eval("file.size(\"" + serverFileR + "\")").asDouble();
+			downloadFile(connection, serverFile, localFile, fileSize, exec);
+			// keep the server file, a downstream node does not need to upload it again
+			if(getWorkspaceCacheSize() > 0)
+				cacheWorkspace(connection, serverFileR, localFile);
+		} catch (IOException | RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Failed to transfer workspace file to localhost: " + e.getMessage());
+		} finally {
 			try {
-				rWorkspaceFile.createNewFile();
-			} catch (IOException e) {
-				throw new KnimeScriptingException("Failed to create workspace file: " + e.getMessage());
+				connection.voidEval("unlink(\"" + serverFileR + "\")");
+			} catch (RserveException e) {
+				// the R session will clean up its temporary directory
 			}
+		}
+	}
 
-			// get binary representation of remote workspace file, delete it and write bytes to local
-			REXP xp;
-			try {
-				System.out.println("write process");
-				xp = connection.parseAndEval(
-						"r=readBin(\"" + tempfile + "\",'raw',file.size(\"" + tempfile + "\")); unlink(\"" + tempfile + "\"); r");
-				FileOutputStream oo = new FileOutputStream(rWorkspaceFile);
-				connection.voidEval("unlink(\"" + tempfile + "\")");
-				oo.write(xp.asBytes());
-				oo.close();
-			} catch (REngineException | REXPMismatchException | IOException e) {
-				throw new KnimeScriptingException("Faile to transfer workspace file to localhost: " + e.getMessage());
+	/**
+	 * moves a downloaded workspace file into the cache on server side (failures are ignored, the cache is optional)
+	 * @param connection
+	 * @param serverFile	file name on server side (escaped for R)
+	 * @param localFile		downloaded copy of the file
+	 */
+	private static void cacheWorkspace(RConnection connection, String serverFile, File localFile) {
+		try {
+			RWorkspaceCache.store(connection, serverFile, RWorkspaceCache.getKey(localFile), getWorkspaceCacheSize());
+		} catch (IOException | RserveException e) {
+			// the server file is deleted by the caller
+		}
+	}
+
+	/**
+	 * copies a file from the R server to a local file in blocks of {@link #TRANSFER_BUFFER_SIZE} bytes
+	 * (memory usage does not depend on the file size)
+	 * @param connection
+	 * @param serverFile	file name on server side
+	 * @param localFile		overwritten if it exists
+	 * @param fileSize		expected number of bytes (for progress)
+	 * @param exec			reports progress (might be null)
+	 * @throws IOException	if the transfer failed or the number of bytes does not match the expected file size
+	 */
+	private static void downloadFile(RConnection connection, String serverFile, File localFile, long fileSize, ExecutionMonitor exec) 
+			throws IOException {
+
+		byte[] buf = new byte[TRANSFER_BUFFER_SIZE];
+		long transferred = 0;
+
+		try (RFileInputStream is = connection.openFile(serverFile);
+				OutputStream os = new FileOutputStream(localFile)) {
+			int len;
+			while ((len = is.read(buf)) > 0) {
+				os.write(buf, 0, len);
+				transferred += len;
+				if(exec != null && fileSize > 0)
+					exec.setProgress(Math.min(1.0, transferred / (double) fileSize), 
+							"download R workspace (" + (transferred >> 20) + " of " + (fileSize >> 20) + " MB)");
 			}
 		}
+
+		if(transferred != fileSize)
+			throw new IOException("Received " + transferred + " of " + fileSize + " bytes of " + serverFile);
 	}
 
 	/**
@@ -605,29 +892,75 @@ public class RUtils {
 	public static void loadWorkspace(File workspaceFile, RConnection connection) 
 			throws KnimeScriptingException {
 		// (Do not create new R objects in workspace before loading!)
+
+		// R runs on this machine: load the workspace file directly if R is allowed to read it
+		if(isLocalHost(getHost())) {
+			String localPath = workspaceFile.getAbsolutePath().replace("\\", "/");
+			try {
+				if(((REXPLogical) connection.eval("isTRUE(file.access(\"" + localPath + "\", 4) == 0)")).isTRUE()[0]) {
+					connection.voidEval("load(\"" + localPath + "\")");
+					return;
+				}
+			} catch (RserveException e) {
+				throw new KnimeScriptingException("Failed to load the workspace: " + e.getMessage());
+			}
+		}
 		
 		// create temporary workspace file on server side
-		File serverWSFile = null;
 		String fileName = null;
+		String fileNameR = null;
 		try {
 			fileName = ((REXPString) connection.eval("tempfile(pattern = \"R-ws-\")")).asString();
-			fileName = fileName.replace("\\", "\\\\");
-			connection.voidEval("file.create(\"" + fileName + "\")");
-			serverWSFile = new File(fileName);
+			fileNameR = fileName.replace("\\", "\\\\");
 		} catch (RserveException | REXPMismatchException e) {
 			throw new KnimeScriptingException("Failed to create temporary workspace file on server side: " + e.getMessage());
 		}
 
-        // transfer workspace from local to remote
-        writeFile(workspaceFile, serverWSFile, connection);
+		// look up the workspace in the cache on server side
+		String cacheKey = null;
+		if(getWorkspaceCacheSize() > 0) {
+			try {
+				cacheKey = RWorkspaceCache.getKey(workspaceFile);
+				if(RWorkspaceCache.load(connection, cacheKey))
+					return;
+			} catch (IOException | RserveException e) {
+				// the cache is optional, transfer the workspace
+			}
+		}
+
+        // transfer workspace from local to remote; a cached file has to match the key (checksum of the local file),
+        // so it is not compressed on the fly
+        try {
+			writeFile(workspaceFile, fileName, connection, cacheKey == null && getUploadCompression());
+		} catch (IOException e) {
+			try {
+				connection.voidEval("unlink(\"" + fileNameR + "\")");
+			} catch (RserveException e1) {
+				// the R session will clean up its temporary directory
+			}
+			throw new KnimeScriptingException("Failed to transfer the workspace to R: " + e.getMessage());
+		}
 
         // load the workspace on the server side within a new environment
         try {
-			connection.voidEval("load(\"" + fileName + "\")");
-			connection.voidEval("unlink(\"" + fileName + "\")");
+			connection.voidEval("load(\"" + fileNameR + "\")");
 		} catch (RserveException e) {
 			throw new KnimeScriptingException("Failed to load the workspace: " + e.getMessage());
 		}
+
+        // keep the uploaded file in the cache (failures are ignored, the cache is optional)
+        if(cacheKey != null) {
+        	try {
+        		RWorkspaceCache.store(connection, fileNameR, cacheKey, getWorkspaceCacheSize());
+        	} catch (RserveException e) {
+        		// the file is deleted below
+        	}
+        }
+        try {
+        	connection.voidEval("unlink(\"" + fileNameR + "\")");
+        } catch (RserveException e) {
+        	// the R session will clean up its temporary directory
+        }
 	}
 	
-}
\ No newline at end of file
+}
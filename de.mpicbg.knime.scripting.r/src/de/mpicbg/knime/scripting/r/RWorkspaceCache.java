@@ -0,0 +1,149 @@
+package de.mpicbg.knime.scripting.r;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.knime.core.node.NodeLogger;
+import org.rosuda.REngine.REXPLogical;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * <p>
+ * cache of workspace files on the R server, keyed by the MD5 hash of the local workspace file.
+ * Workspaces downloaded from R or uploaded to R are kept in a cache directory of the user running Rserve
+ * (<code>tools::R_user_dir</code>, or <code>~/.knime-ws-cache</code> with R &lt; 4.0, created readable by this user only),
+ * so a workspace which already crossed the wire does not need to be uploaded again. The cache is opt-in (preference).
+ * </p>
+ * <p>
+ * Trust: all clients of an Rserve process share the cache, and the objects of a cached workspace (including
+ * functions) are used by the scripts of downstream nodes. A cached file is only loaded if its MD5 hash matches the key, so another client cannot place
+ * a different workspace under a key, but the cache should only be enabled on R servers whose account is trusted.
+ * </p>
+ * <p>
+ * The size of the cache directory is bounded; least recently used files are removed first
+ * (the modification time of a file is updated on each hit).
+ * </p>
+ */
+public class RWorkspaceCache {
+
+	/** R expression of the cache directory */
+	private static final String CACHE_DIR = "(if(exists(\"R_user_dir\", envir = asNamespace(\"tools\"))) "
+			+ "tools::R_user_dir(\"knime\", which = \"cache\") else path.expand(\"~/.knime-ws-cache\"))";
+
+	/** number of local files whose hash is remembered */
+	private static final int MAX_HASHED_FILES = 100;
+
+	/** MD5 hash of local files, keyed by path, length and modification time */
+	private static final Map<String, String> hashes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_HASHED_FILES;
+		}
+	};
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(RWorkspaceCache.class);
+
+	private RWorkspaceCache() {
+		// static access only
+	}
+
+	/**
+	 * @param workspaceFile	local workspace file
+	 * @return cache key (MD5 hash of the file content)
+	 * @throws IOException
+	 */
+	public static String getKey(File workspaceFile) throws IOException {
+		String fileId = workspaceFile.getAbsolutePath() + ":" + workspaceFile.length() + ":" + workspaceFile.lastModified();
+		synchronized (hashes) {
+			String hash = hashes.get(fileId);
+			if(hash != null) return hash;
+		}
+
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+
+		byte[] buf = new byte[1024 * 1024];
+		try (InputStream is = new FileInputStream(workspaceFile)) {
+			int len;
+			while((len = is.read(buf)) > 0)
+				md5.update(buf, 0, len);
+		}
+
+		StringBuilder hash = new StringBuilder();
+		for(byte b : md5.digest())
+			hash.append(String.format("%02x", b));
+
+		synchronized (hashes) {
+			hashes.put(fileId, hash.toString());
+		}
+		return hash.toString();
+	}
+
+	/**
+	 * loads the cached workspace into the R session if present
+	 * @param connection
+	 * @param key		see {@link #getKey(File)}
+	 * @return true, if the workspace was loaded from the cache
+	 * @throws RserveException
+	 */
+	public static boolean load(RConnection connection, String key) throws RserveException {
+		String cacheFile = getCacheFile(key);
+		// the content has to match the key
+		if(!((REXPLogical) connection.eval("local({ f <- " + cacheFile + "; "
+				+ "file.exists(f) && identical(unname(tools::md5sum(f)), \"" + key + "\") })")).isTRUE()[0])
+			return false;
+
+		try {
+			connection.voidEval("Sys.setFileTime(" + cacheFile + ", Sys.time())");
+			connection.voidEval("load(" + cacheFile + ")");
+		} catch (RserveException e) {
+			// corrupt cache file, caller transfers the workspace again
+			LOGGER.debug("failed to load cached workspace " + key + ": " + e.getMessage());
+			connection.voidEval("unlink(" + cacheFile + ")");
+			return false;
+		}
+		LOGGER.debug("loaded workspace " + key + " from R server cache");
+		return true;
+	}
+
+	/**
+	 * moves a workspace file on server side into the cache and removes least recently used files
+	 * if the cache exceeds its maximum size (the new file is always kept)
+	 * @param connection
+	 * @param serverFile	file name on server side (escaped for R)
+	 * @param key			see {@link #getKey(File)}
+	 * @param maxBytes		maximum size of the cache directory
+	 * @throws RserveException
+	 */
+	public static void store(RConnection connection, String serverFile, String key, long maxBytes) throws RserveException {
+		String cacheFile = getCacheFile(key);
+		connection.voidEval("dir.create(" + CACHE_DIR + ", showWarnings = FALSE, recursive = TRUE, mode = \"0700\")");
+		// rename fails across file systems
+		connection.voidEval("if(!file.rename(\"" + serverFile + "\", " + cacheFile + ")) { "
+				+ "file.copy(\"" + serverFile + "\", " + cacheFile + ", overwrite = TRUE); unlink(\"" + serverFile + "\") }");
+		connection.voidEval("local({ f <- list.files(" + CACHE_DIR + ", pattern = \"\\\\.RData$\", full.names = TRUE); "
+				+ "i <- file.info(f); f <- f[order(i$mtime, decreasing = TRUE)]; s <- cumsum(i[f, \"size\"]); "
+				+ "unlink(f[-1][s[-1] > " + maxBytes + "]) })");
+	}
+
+	/**
+	 * @param key
+	 * @return R expression of the cache file of the given key
+	 */
+	private static String getCacheFile(String key) {
+		return "file.path(" + CACHE_DIR + ", \"" + key + ".RData\")";
+	}
+}
@@ -1,16 +1,15 @@
 package de.mpicbg.knime.scripting.r.data;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
-import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.knime.core.data.BooleanValue;
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataCellFactory;
@@ -71,17 +70,29 @@ public class RDataColumn {
 	/** column data type */
 	private RType m_type;
 	
-	/** data vector */
-	private Object[] m_data;
+	/** data vector for R_DOUBLE */
+	private double[] m_doubleData;
 	
-	/** list of missing value indicees - zero based*/
-	private HashSet<Integer> m_missingFlags = new HashSet<Integer>();
+	/** data vector for R_INT and R_FACTOR (level index) */
+	private int[] m_intData;
 	
-	/** column levels(R)/domain values(KNIME) with index - zero-based */
-	private HashMap<Integer, String> m_levels = new HashMap<Integer, String>();
+	/** data vector for R_LOGICAL */
+	private byte[] m_logicalData;
 	
-	/** column upper and lower bound */
-	private double[] m_bounds = new double[2];
+	/** data vector for R_STRING */
+	private RStringStore m_stringData;
+	
+	/** column levels(R)/domain values(KNIME) with value => code lookup */
+	private RFactorLevels m_levels = new RFactorLevels(new String[0]);
+	
+	/** column upper and lower bound (null if unknown, e.g. only missing values) */
+	private double[] m_bounds = null;
+	
+	/** number of missing values in the column */
+	private int m_numMissing = 0;
+
+	/** bytes per cell in a transfer message, sampled from the data (0 if unknown) */
+	private long m_messageBytesPerCell = 0;
 	
 	
 	/**
@@ -104,19 +115,19 @@ public class RDataColumn {
 	public void initDataVector(int size) {
 		switch(m_type) {
 		case R_LOGICAL:
-			m_data = new Byte[size];
+			m_logicalData = new byte[size];
 			break;
 		case R_INT:
-			m_data = new Integer[size];
+			m_intData = new int[size];
 			break;
 		case R_DOUBLE:
-			m_data = new Double[size];
+			m_doubleData = new double[size];
 			break;
 		case R_FACTOR:
-			m_data = new Integer[size];
+			m_intData = new int[size];
 			break;
 		case R_STRING:
-			m_data = new String[size];
+			m_stringData = new RStringStore(size);
 			break;
 		default:
 		}		
@@ -156,30 +167,27 @@ public class RDataColumn {
 
 	/**
 	 * add KNIME row value to data vector at a given row index
-	 * also adds index to missing value indices if missing cekk
+	 * missing cells are stored as native R NA values
 	 * @param cell
 	 * @param rowIdx
 	 */
 	public void addData(DataCell cell, int rowIdx) {
 		
-		if(cell.isMissing() && m_type == RType.R_STRING)
-			m_missingFlags.add(rowIdx);
-		
 		switch(m_type) {
 		case R_LOGICAL:
-			((Byte[])m_data)[rowIdx] = getLogicalValue(cell);
+			m_logicalData[rowIdx] = getLogicalValue(cell);
 			break;
 		case R_INT:
-			((Integer[])m_data)[rowIdx] = getIntegerValue(cell);
+			m_intData[rowIdx] = getIntegerValue(cell);
 			break;
 		case R_DOUBLE:
-			((Double[])m_data)[rowIdx] = getDoubleValue(cell);
+			m_doubleData[rowIdx] = getDoubleValue(cell);
 			break;
 		case R_FACTOR:
-			((Integer[])m_data)[rowIdx] = getLevelIndex(cell);
+			m_intData[rowIdx] = getLevelIndex(cell);
 			break;
 		case R_STRING:
-			((String[])m_data)[rowIdx] = getStringValue(cell);
+			m_stringData.set(rowIdx, getStringValue(cell));
 			break;
 		default:
 		}
@@ -187,29 +195,23 @@ public class RDataColumn {
 	
 	/**
 	 * @param cell
-	 * @return one-based integer representing the level-based string
+	 * @return one-based integer representing the level-based string, {@link REXPInteger#NA} if missing or unknown
 	 */
-	private Integer getLevelIndex(DataCell cell) {
+	private int getLevelIndex(DataCell cell) {
 		if(cell.isMissing())
 			return REXPInteger.NA;
 		
-		String value = ((StringValue)cell).getStringValue();
-		if(m_levels.containsValue(value)) {
-			for(int i : m_levels.keySet())
-				if(m_levels.get(i).equals(value))
-					return (i+1);
-		}
-		return -1;
+		return m_levels.encode(((StringValue)cell).getStringValue());
 	}
 
 	/**
 	 * @param cell
-	 * @return string value of KNIME cell or {@link RDataFrameContainer#NA_VAL_FOR_R} if missing cell
+	 * @return string value of KNIME cell or null if missing cell (transferred as NA by Rserve)
 	 */
 	private String getStringValue(DataCell cell) {
 		String val;
 		if(cell.isMissing())
-			val = RDataFrameContainer.NA_VAL_FOR_R;
+			val = null;
 		else
 			val = ((StringValue)cell).getStringValue();
 		return val;
@@ -219,7 +221,7 @@ public class RDataColumn {
 	 * @param cell
 	 * @return integer value of KNIME cell or {@link REXPInteger#NA} if missing cell
 	 */
-	private Integer getIntegerValue(DataCell cell) {
+	private int getIntegerValue(DataCell cell) {
 		int val;
 		if(cell.isMissing())
 			val = REXPInteger.NA;
@@ -255,20 +257,23 @@ public class RDataColumn {
 	}
 
 	/**
-	 * @return data vector as REXP representation
+	 * @return data vector as REXP representation (primitive vectors are passed without copy);
+	 * low cardinality string columns are passed as factor (see {@link RStringStore#isLowCardinality()})
 	 */
 	public REXP getREXPData() {
 		switch(m_type) {
 		case R_LOGICAL:
-			return new REXPLogical(ArrayUtils.toPrimitive((Byte[]) m_data));
+			return new REXPLogical(m_logicalData);
 		case R_INT:
-			return new REXPInteger(ArrayUtils.toPrimitive((Integer[]) m_data));
+			return new REXPInteger(m_intData);
 		case R_DOUBLE:
-			return new REXPDouble(ArrayUtils.toPrimitive((Double[]) m_data));
+			return new REXPDouble(m_doubleData);
 		case R_FACTOR:
-			return new REXPFactor(ArrayUtils.toPrimitive((Integer[]) m_data), getLevels()); 
+			return new REXPFactor(m_intData, getLevels()); 
 		case R_STRING:
-			return new REXPString((String[]) m_data);
+			if(m_stringData.isLowCardinality())
+				return new REXPFactor(m_stringData.getFactorCodes(), m_stringData.getDictionary());
+			return new REXPString(m_stringData.toArray());
 		default:
 		}
 		
@@ -279,43 +284,118 @@ public class RDataColumn {
 	 * @return levels as String vector
 	 */
 	private String[] getLevels() {
-		String[] levels = new String[m_levels.size()];
-		Integer[] indices = m_levels.keySet().toArray(new Integer[m_levels.size()]);
-		Arrays.sort(indices);
-		
-		for(int i : indices) {
-			levels[i] = m_levels.get(i);
+		return m_levels.getLevels();
+	}
+
+	/**
+	 * @return estimated number of bytes needed to keep one cell of this column in the data vector
+	 */
+	public long getBytesPerCell() {
+		switch(m_type) {
+		case R_LOGICAL:
+			return 1;
+		case R_INT:
+		case R_FACTOR:
+			return 4;
+		case R_DOUBLE:
+			return 8;
+		case R_STRING:
+			// dictionary code + share of the distinct string objects, conservative for high cardinality columns
+			return 64;
+		default:
 		}
-		
-		return levels;
+		return 8;
 	}
 
 	/**
-	 * set data vector to null
+	 * writes the first n values of the data vector to a stream (used to spill column blocks to disk)
+	 * @param out
+	 * @param n
+	 * @throws IOException
 	 */
-	public void clearData() {
-		m_data = null;
+	public void writeData(DataOutputStream out, int n) throws IOException {
+		for(int i = 0; i < n; i++) {
+			switch(m_type) {
+			case R_LOGICAL:
+				out.writeByte(m_logicalData[i]);
+				break;
+			case R_INT:
+			case R_FACTOR:
+				out.writeInt(m_intData[i]);
+				break;
+			case R_DOUBLE:
+				out.writeDouble(m_doubleData[i]);
+				break;
+			case R_STRING:
+				String value = m_stringData.get(i);
+				if(value == null) {
+					out.writeInt(-1);
+				} else {
+					byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				break;
+			default:
+			}
+		}
+	}
+
+	/**
+	 * reads n values from a stream (written by {@link #writeData(DataOutputStream, int)}) into the data vector
+	 * @param in
+	 * @param offset	row index of the first value
+	 * @param n
+	 * @throws IOException
+	 */
+	public void readData(DataInputStream in, int offset, int n) throws IOException {
+		for(int i = offset; i < offset + n; i++) {
+			switch(m_type) {
+			case R_LOGICAL:
+				m_logicalData[i] = in.readByte();
+				break;
+			case R_INT:
+			case R_FACTOR:
+				m_intData[i] = in.readInt();
+				break;
+			case R_DOUBLE:
+				m_doubleData[i] = in.readDouble();
+				break;
+			case R_STRING:
+				int len = in.readInt();
+				if(len < 0) {
+					m_stringData.set(i, null);
+				} else {
+					byte[] bytes = new byte[len];
+					in.readFully(bytes);
+					m_stringData.set(i, new String(bytes, StandardCharsets.UTF_8));
+				}
+				break;
+			default:
+			}
+		}
 	}
 
 	/**
-	 * @return comma separated string with missing value indices
+	 * set data vector to null
 	 */
-	public String getMissingIdx() {
-		return StringUtils.join(m_missingFlags, ',');
+	public void clearData() {
+		m_doubleData = null;
+		m_intData = null;
+		m_logicalData = null;
+		m_stringData = null;
 	}
-	
+
 	/**
 	 * set levels from KNIME-domain values
 	 * @param levels
 	 */
 	public void setLevels(Set<DataCell> levels) {
-		m_levels = new HashMap<Integer, String>();
 		assert levels!= null;
-		int i = 0;
-		for(DataCell cell : levels) {
-			m_levels.put(i, ((StringValue)cell).getStringValue());
-			i++;
-		}
+		List<String> values = new ArrayList<String>(levels.size());
+		for(DataCell cell : levels)
+			values.add(((StringValue)cell).getStringValue());
+		m_levels = new RFactorLevels(values);
 	}
 	
 	// R >>> KNIME
@@ -326,9 +406,7 @@ public class RDataColumn {
 	 * @param levels
 	 */
 	public void setLevels(String[] levels) {
-		m_levels = new HashMap<Integer, String>();
-		for(int i = 1; i <= levels.length; i++)
-			this.m_levels.put(i, levels[i-1]);
+		m_levels = new RFactorLevels(levels);
 	}
 	
 	/**
@@ -338,6 +416,36 @@ public class RDataColumn {
 	public void setBounds(double[] bounds) {
 		this.m_bounds = bounds;
 	}
+	
+	/**
+	 * set number of missing values
+	 * @param numMissing
+	 */
+	public void setNumMissing(int numMissing) {
+		this.m_numMissing = numMissing;
+	}
+	
+	/**
+	 * @return number of missing values
+	 */
+	public int getNumMissing() {
+		return m_numMissing;
+	}
+
+	/**
+	 * set the number of bytes per cell in a transfer message (e.g. sampled string sizes)
+	 * @param bytes
+	 */
+	public void setMessageBytesPerCell(long bytes) {
+		this.m_messageBytesPerCell = bytes;
+	}
+
+	/**
+	 * @return bytes per cell in a transfer message, sampled if available, estimated from the type otherwise
+	 */
+	public long getMessageBytesPerCell() {
+		return m_messageBytesPerCell > 0 ? m_messageBytesPerCell : getBytesPerCell();
+	}
 
 	/**
 	 * @return KNIME data type
@@ -359,24 +467,19 @@ public class RDataColumn {
 	private LinkedHashSet<DataCell> createDomainValueSet() {
 		LinkedHashSet<DataCell> values = new LinkedHashSet<DataCell>();
 		
-		Integer[] indices = m_levels.keySet().toArray(new Integer[m_levels.size()]);
-		Arrays.sort(indices);
-		
-		for(int i : indices) {
-			String level = m_levels.get(i);
+		for(String level : m_levels.getLevels())
 			values.add(new StringCell(level));
-		}
 		
 		return values;
 	}
 
 	/**
-	 * @param hasValues if TRUE, set levels
+	 * @param hasValues if TRUE, set levels and bounds (if available)
 	 * @return KNIME domain object for this column
 	 */
 	public DataColumnDomain getKnimeDomain(boolean hasValues) {
 		DataColumnDomainCreator dCDC = new DataColumnDomainCreator();
-		if(hasValues) {
+		if(hasValues && m_bounds != null) {
 			if(m_type.equals(RType.R_DOUBLE)) {
 				dCDC.setLowerBound(new DoubleCell(m_bounds[0]));
 				dCDC.setUpperBound(new DoubleCell(m_bounds[1]));
@@ -397,6 +500,8 @@ public class RDataColumn {
 				vals.add(BooleanCell.get(lBound));
 				dCDC.setValues(vals);
 			}
+		}
+		if(hasValues) {
 			if(m_type.equals(RType.R_FACTOR)) {
 				dCDC.setValues(createDomainValueSet());
 			}
@@ -407,37 +512,29 @@ public class RDataColumn {
 
 	/**
 	 * add REXP-vector values to data vector
-	 * also keeps missing-value indices
+	 * missing values are kept as native R NA values
 	 * @param data
+	 * @throws REXPMismatchException 
 	 */
-	public void addData(REXP data) {
-		
-		try {
-			boolean[] missingVals = data.isNA();
-			m_missingFlags = new HashSet<Integer>();
-			for(int i = 0; i < missingVals.length; i++)
-				if(missingVals[i])
-					m_missingFlags.add(i);
-			
-		} catch (REXPMismatchException e) {
-			e.printStackTrace();
-		}
+	public void addData(REXP data) throws REXPMismatchException {
 		
 		switch(m_type) {
 		case R_LOGICAL:
-			m_data = ArrayUtils.toObject(((REXPLogical)data).isTRUE());
+			m_logicalData = ((REXPLogical)data).asBytes();
 			break;
 		case R_INT:
-			m_data = ArrayUtils.toObject(((REXPInteger)data).asIntegers());
+			m_intData = ((REXPInteger)data).asIntegers();
 			break;
 		case R_DOUBLE:
-			m_data = ArrayUtils.toObject(((REXPDouble)data).asDoubles());
+			m_doubleData = ((REXPDouble)data).asDoubles();
 			break;
 		case R_FACTOR:
-			m_data = ((REXPFactor)data).asFactor().asStrings();
+			// keep the codes, levels are decoded per cell
+			m_intData = ((REXPFactor)data).asIntegers();
+			m_levels = new RFactorLevels(((REXPFactor)data).asFactor().levels());
 			break;
 		case R_STRING:
-			m_data = ((REXPString)data).asStrings();
+			m_stringData = new RStringStore(((REXPString)data).asStrings());
 			break;
 		default:
 		}
@@ -445,28 +542,36 @@ public class RDataColumn {
 
 	/** 
 	 * @param rowIdx
-	 * @return KNIME cell for a given row index
+	 * @return KNIME cell for a given row index (missing cell for R NA values)
 	 */
 	public DataCell getKNIMECell(int rowIdx) {
 		
-		if(m_missingFlags.size() > 0)
-			if(m_missingFlags.contains(rowIdx))
-				return DataType.getMissingCell();
-		
 		switch(m_type) {
 		case R_LOGICAL:
-			return BooleanCellFactory.create((boolean)m_data[rowIdx]);
-			//return BooleanCell.get((boolean) m_data[rowIdx]);
+			byte logical = m_logicalData[rowIdx];
+			if(REXPLogical.isNA(logical))
+				return DataType.getMissingCell();
+			return BooleanCellFactory.create(logical == REXPLogical.TRUE);
 		case R_INT:
-			return IntCellFactory.create((int) m_data[rowIdx]);
-			//return new IntCell((Integer) m_data[rowIdx]);
+			int integer = m_intData[rowIdx];
+			if(integer == REXPInteger.NA)
+				return DataType.getMissingCell();
+			return IntCellFactory.create(integer);
 		case R_DOUBLE:
-			return DoubleCellFactory.create((double) m_data[rowIdx]);
-			//return new DoubleCell((Double) m_data[rowIdx]);
+			double value = m_doubleData[rowIdx];
+			if(REXPDouble.isNA(value))
+				return DataType.getMissingCell();
+			return DoubleCellFactory.create(value);
 		case R_FACTOR:
+			String level = m_levels.decode(m_intData[rowIdx]);
+			if(level == null)
+				return DataType.getMissingCell();
+			return StringCellFactory.create(level);
 		case R_STRING:
-			return StringCellFactory.create((String) m_data[rowIdx]);
-			//return new StringCell((String) m_data[rowIdx]);
+			String string = m_stringData.get(rowIdx);
+			if(string == null)
+				return DataType.getMissingCell();
+			return StringCellFactory.create(string);
 		default:
 		}
 		return null;
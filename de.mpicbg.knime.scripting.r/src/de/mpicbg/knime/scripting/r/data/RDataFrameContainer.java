@@ -1,11 +1,23 @@
 package de.mpicbg.knime.scripting.r.data;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.knime.core.data.DataCell;
@@ -16,16 +28,22 @@ import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeLogger;
 import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPFactor;
 import org.rosuda.REngine.REXPGenericVector;
+import org.rosuda.REngine.REXPMismatchException;
 import org.rosuda.REngine.REXPString;
 import org.rosuda.REngine.RList;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
 
+import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
+import de.mpicbg.knime.scripting.r.RCommandBatch;
+
 /**
  * <p>
  * table model for R <-> KNIME transfer
@@ -35,10 +53,13 @@ import org.rosuda.REngine.Rserve.RserveException;
  * - create table, add column specs, add row keys, add data
  * </pre>
  * <p>
- * To R: push column chunks to R, clear chunk data, later combine within R to a single data frame
+ * To R: read the table once into all column chunks (spill to disk if the memory budget is exceeded), 
+ * push column chunks to R (next spilled chunk is loaded meanwhile), clear chunk data, later combine within R 
+ * to a single data frame
  * </p>
  * <p>
- * To KNIME: pull row chunks from R (re-use column data vector), fill in KNIME data table
+ * To KNIME: pull column vectors in row blocks from R (next blocks are fetched while rows are created), 
+ * fill in KNIME data table
  * </p>
  * 
  * @author Antje Janosch
@@ -56,6 +77,11 @@ public class RDataFrameContainer {
 	 */
 	private List<String> m_chunkNames = new ArrayList<String>();
 	
+	/**
+	 * names of string columns which were transferred as factor (dictionary-encoded)
+	 */
+	private List<String> m_dictionaryColumns = new ArrayList<String>();
+	
 	/**
 	 * row keys of table
 	 */
@@ -72,10 +98,25 @@ public class RDataFrameContainer {
 	private int m_numCols;
 	
 	/**
-	 * intermediate value for missing strings; RServe does not support NA-values for Strings
+	 * temporary files with spilled column blocks per chunk (empty if all chunks fit into memory)
+	 */
+	private HashMap<Integer, File> m_spillFiles = new HashMap<Integer, File>();
+	
+	/**
+	 * chunks which are currently read back from their spill files in background
+	 */
+	private HashMap<Integer, ChunkLoader> m_chunkLoaders = new HashMap<Integer, ChunkLoader>();
+	
+	/**
+	 * string value which is treated as missing when R string vectors are converted without NA information
 	 */
 	public static final String NA_VAL_FOR_R = "NA";
 	
+	/**
+	 * number of row blocks which might be fetched in advance
+	 */
+	private static final int PULL_QUEUE_SIZE = 2;
+	
 	/**
 	 * KNIME logger
 	 */
@@ -118,6 +159,13 @@ public class RDataFrameContainer {
 		addColumnSpec(rColumn, chunk);
 	}*/
 
+	/**
+	 * @return columns of the first chunk (all columns when pulling from R)
+	 */
+	public List<RDataColumn> getColumns() {
+		return m_numCols > 0 ? m_columnChunks.get(0) : new ArrayList<RDataColumn>();
+	}
+
 	/**
 	 * @return set of chunk indices
 	 */
@@ -131,16 +179,243 @@ public class RDataFrameContainer {
 	 * @return
 	 */
 	public boolean initDataVectors(int chunk) {
+		return initDataVectors(chunk, m_numRows);
+	}
+	
+	/**
+	 * initialize the data vectors of all columns in a given chunk with a given size
+	 * @param chunk
+	 * @param size
+	 * @return
+	 */
+	private boolean initDataVectors(int chunk, int size) {
 		if(!m_columnChunks.containsKey(chunk)) {
 			logger.coding("cannot initialize data vectors. no chunk '" + chunk + "' available");
 			return false;
 		}
 		
 		for(RDataColumn column : m_columnChunks.get(chunk)) {	
-			column.initDataVector(m_numRows);			
+			column.initDataVector(size);			
 		}		
 		return true;
 	}
+	
+	/**
+	 * @return estimated number of bytes to keep one row of all columns in memory
+	 */
+	private long getBytesPerRow() {
+		long bytes = 0;
+		for(ArrayList<RDataColumn> columns : m_columnChunks.values())
+			for(RDataColumn column : columns)
+				bytes += column.getBytesPerCell();
+		return bytes;
+	}
+	
+	/**
+	 * reads a KNIME table in a single pass and fills the row keys and the data vectors of all column chunks.
+	 * If the data of all chunks does not fit into the memory budget, rows are collected in blocks which are 
+	 * spilled to one temporary file per chunk; use {@link #loadChunk(int)} to get the data of a chunk back
+	 * 
+	 * @param table
+	 * @param exec
+	 * @param memoryBudget	number of bytes which might be used to buffer the data of all chunks
+	 * @throws CanceledExecutionException
+	 * @throws IOException
+	 */
+	public void readTable(BufferedDataTable table, ExecutionMonitor exec, long memoryBudget) 
+			throws CanceledExecutionException, IOException {
+		
+		long bytesPerRow = getBytesPerRow();
+		boolean spill = bytesPerRow > 0 && bytesPerRow * m_numRows > memoryBudget;
+		int blockSize = m_numRows;
+		if(spill)
+			blockSize = (int) Math.max(1, Math.min(m_numRows, memoryBudget / bytesPerRow));
+		
+		HashMap<Integer, DataOutputStream> spillStreams = new HashMap<Integer, DataOutputStream>();
+		try {
+			for(int chunk : m_columnChunks.keySet()) {
+				initDataVectors(chunk, blockSize);
+				if(spill) {
+					File spillFile = File.createTempFile("knime-r-chunk" + chunk + "_", ".bin");
+					m_spillFiles.put(chunk, spillFile);
+					spillStreams.put(chunk, new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile))));
+				}
+			}
+			if(spill)
+				logger.info("data does not fit into memory budget: spill " + m_columnChunks.size() + " column chunk(s) in blocks of " + blockSize + " rows");
+			
+			int rowIdx = 0;
+			int blockIdx = 0;
+			for(DataRow row : table) {
+				exec.checkCanceled();
+				exec.setProgress(((double)rowIdx+1)/(double)m_numRows, "Row " + rowIdx);
+				
+				addRowKey(rowIdx, row.getKey().getString());
+				for(int chunk : m_columnChunks.keySet())
+					addRowData(row, blockIdx, chunk);
+				
+				rowIdx ++;
+				blockIdx ++;
+				if(spill && blockIdx == blockSize) {
+					spillBlock(spillStreams, blockIdx);
+					blockIdx = 0;
+				}
+			}
+			if(spill && blockIdx > 0)
+				spillBlock(spillStreams, blockIdx);
+		} finally {
+			for(DataOutputStream out : spillStreams.values())
+				out.close();
+		}
+		
+		// block vectors are not needed anymore, data will be read back chunk by chunk
+		if(spill) {
+			for(int chunk : m_columnChunks.keySet())
+				clearChunk(chunk);
+		}
+		exec.setProgress(1);
+	}
+	
+	/**
+	 * writes the current block of all chunks to their spill files
+	 * @param spillStreams
+	 * @param blockLength	number of rows in that block
+	 * @throws IOException
+	 */
+	private void spillBlock(HashMap<Integer, DataOutputStream> spillStreams, int blockLength) throws IOException {
+		for(int chunk : m_columnChunks.keySet()) {
+			DataOutputStream out = spillStreams.get(chunk);
+			out.writeInt(blockLength);
+			for(RDataColumn column : m_columnChunks.get(chunk))
+				column.writeData(out, blockLength);
+		}
+	}
+	
+	/**
+	 * makes sure the data vectors of a chunk are filled; reads spilled column blocks back if necessary
+	 * or waits for the background loading started with {@link #loadChunkInBackground(int)}
+	 * @param chunk
+	 * @throws IOException
+	 */
+	public void loadChunk(int chunk) throws IOException {
+		ChunkLoader loader = m_chunkLoaders.remove(chunk);
+		if(loader != null) {
+			try {
+				loader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while loading chunk " + chunk);
+			}
+			if(loader.m_error != null)
+				throw loader.m_error;
+			return;
+		}
+		
+		File spillFile = m_spillFiles.remove(chunk);
+		if(spillFile == null) return;
+		
+		readSpillFile(chunk, spillFile);
+	}
+	
+	/**
+	 * starts to read the spilled column blocks of a chunk back on a separate thread 
+	 * (e.g. while the previous chunk is transferred to R); does nothing if the chunk has not been spilled
+	 * @param chunk
+	 */
+	public void loadChunkInBackground(int chunk) {
+		File spillFile = m_spillFiles.remove(chunk);
+		if(spillFile == null) return;
+		
+		logger.debug("load chunk " + chunk + " in background");
+		ChunkLoader loader = new ChunkLoader(chunk, spillFile);
+		m_chunkLoaders.put(chunk, loader);
+		loader.start();
+	}
+	
+	/**
+	 * @param chunk
+	 * @return estimated number of bytes to keep the data of a given chunk in memory
+	 */
+	public long getChunkBytes(int chunk) {
+		long bytes = 0;
+		for(RDataColumn column : m_columnChunks.get(chunk))
+			bytes += column.getBytesPerCell();
+		return bytes * m_numRows;
+	}
+	
+	/**
+	 * fills the data vectors of a chunk from its spill file and deletes the file afterwards
+	 * @param chunk
+	 * @param spillFile
+	 * @throws IOException
+	 */
+	private void readSpillFile(int chunk, File spillFile) throws IOException {
+		initDataVectors(chunk, m_numRows);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)))) {
+			int offset = 0;
+			while(offset < m_numRows) {
+				if(Thread.currentThread().isInterrupted())
+					throw new InterruptedIOException("loading chunk " + chunk + " has been stopped");
+				int blockLength = in.readInt();
+				for(RDataColumn column : m_columnChunks.get(chunk))
+					column.readData(in, offset, blockLength);
+				offset += blockLength;
+			}
+		} finally {
+			Files.deleteIfExists(spillFile.toPath());
+		}
+	}
+	
+	/**
+	 * thread which reads a spilled chunk back
+	 */
+	private class ChunkLoader extends Thread {
+		
+		private final int m_chunk;
+		private final File m_spillFile;
+		/** set if loading failed */
+		private IOException m_error;
+		
+		private ChunkLoader(int chunk, File spillFile) {
+			super("R push load chunk " + chunk);
+			setDaemon(true);
+			m_chunk = chunk;
+			m_spillFile = spillFile;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				readSpillFile(m_chunk, m_spillFile);
+			} catch (IOException e) {
+				m_error = e;
+			}
+		}
+	}
+	
+	/**
+	 * stops background loading and removes all remaining spill files (e.g. after the transfer has been cancelled)
+	 */
+	public void deleteSpillFiles() {
+		for(ChunkLoader loader : m_chunkLoaders.values()) {
+			loader.interrupt();
+			try {
+				loader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		m_chunkLoaders.clear();
+		
+		for(File spillFile : m_spillFiles.values()) {
+			try {
+				Files.deleteIfExists(spillFile.toPath());
+			} catch (IOException e) {
+				logger.debug("failed to delete " + spillFile.getAbsolutePath() + ": " + e.getMessage());
+			}
+		}
+		m_spillFiles.clear();
+	}
 
 	/**
 	 * store data of a given row from all columns of a given chunk
@@ -172,7 +447,10 @@ public class RDataFrameContainer {
 		List<RDataColumn> columns = m_columnChunks.get(chunk);
     	for(RDataColumn col : columns) {
             String colName = col.getName();          
-            rList.put(colName, col.getREXPData());
+            REXP data = col.getREXPData();
+            if(col.getType().equals(RType.R_STRING) && data instanceof REXPFactor)
+            	m_dictionaryColumns.add(colName);
+            rList.put(colName, data);
     	}
     	
     	// chunk name
@@ -189,12 +467,14 @@ public class RDataFrameContainer {
 	
 	/**
 	 * combines all transfered chunks into a single data frame
-	 * fixes missing values
+	 * (missing values are already part of the column vectors as native NA values)
+	 * NOTE: the commands are only queued, they are sent to R with the next flush of the batch
 	 * @param parName
-	 * @param connection
-	 * @throws RserveException
+	 * @param batch
+	 * @param keepFactors	if FALSE, dictionary-encoded string columns are converted back to character vectors;
+	 * 						otherwise their levels are sorted as by factor() (levels are sent in order of first occurrence)
 	 */
-	public void createDataFrame(String parName, RConnection connection) throws RserveException {
+	public void createDataFrame(String parName, RCommandBatch batch, boolean keepFactors) {
 		logger.debug("combine chunks");
 
 		String combineString = parName + " <- c(" + StringUtils.join(m_chunkNames, ",") + ")";
@@ -202,36 +482,33 @@ public class RDataFrameContainer {
         
         if(m_numCols > 0) {
         	// combine chunks into one list
-        	connection.voidEval(combineString);
+        	batch.voidEval(combineString);
         	// remove chunk objects
-        	connection.voidEval(removeString);
+        	batch.voidEval(removeString);
+        	// dictionary-encoded string columns
+        	if(!m_dictionaryColumns.isEmpty()) {
+        		String dictName = parName + "_dictcols";
+        		// sorting the levels only remaps the codes, the strings are not touched
+        		String convert = keepFactors ? 
+        				"function(x) { o <- order(levels(x)); structure(order(o)[unclass(x)], levels = levels(x)[o], class = \"factor\") }" : 
+        				"as.character";
+        		batch.assign(dictName, new REXPString(m_dictionaryColumns.toArray(new String[m_dictionaryColumns.size()])));
+        		batch.voidEval(parName + "[" + dictName + "] <- lapply(" + parName + "[" + dictName + "], " + convert + "); rm(" + dictName + ")");
+        	}
             // convert list to dataframe
             // READABLE EXAMPLE:
             // attr(kIn,"row.names") <- .set_row_names(length(kIn[[1]])); 
             // class(kIn) <- "data.frame"; 
         	logger.debug("make dataframe");
-            connection.voidEval("attr(" + parName + ", \"row.names\") <- .set_row_names(length(" + parName + "[[1]])); class(" + parName + ") <- \"data.frame\"; ");
+            batch.voidEval("attr(" + parName + ", \"row.names\") <- .set_row_names(length(" + parName + "[[1]])); class(" + parName + ") <- \"data.frame\"; ");
         } else // create a data frame with a given number of rows but no columns
-        	connection.voidEval(parName + " <- data.frame(matrix(nrow = " + m_numRows + ", ncol = 0))");
+        	batch.voidEval(parName + " <- data.frame(matrix(nrow = " + m_numRows + ", ncol = 0))");
         
         if(m_numRows > 0) {
         	// push row names to R and assign to dataframe
-        	connection.assign(parName + "_rownames", new REXPString(this.m_rowKeys));
-        	connection.voidEval("rownames(" + parName + ") <- " + parName + "_rownames");
-        	connection.voidEval("rm(" + parName + "_rownames)");
-        }
-        
-        List<String> dataframeColumns = Arrays.asList(((REXPString)connection.eval("colnames(" + parName + ")")).asStrings());
-        
-        logger.debug("fix missing values");
-        
-        // update missing values for string columns
-        // e.g. kIn[,2][c(1,6,20,21)] <- NA
-        for(Integer chunk : m_columnChunks.keySet()) {
-            for(RDataColumn col : m_columnChunks.get(chunk)) {
-            	String missingIdxVec = "[c(" + col.getMissingIdx() + ")]";
-            	connection.voidEval(parName + "[," + (dataframeColumns.indexOf(col.getName())+1) + "]" + missingIdxVec + " <- NA");
-            }
+        	batch.assign(parName + "_rownames", new REXPString(this.m_rowKeys));
+        	batch.voidEval("rownames(" + parName + ") <- " + parName + "_rownames");
+        	batch.voidEval("rm(" + parName + "_rownames)");
         }
 	}
 
@@ -280,51 +557,182 @@ public class RDataFrameContainer {
 	}
 
 	/**
-	 * pulls data frame with a given name from R (in row chunks of a given size) and fills KNIME table with this data
+	 * pulls data frame with a given name from R and fills KNIME table with this data. 
+	 * Each column is fetched as native vector (no data frame copy in R) in row blocks. A separate thread 
+	 * fetches the next blocks over the connection while the current block is converted into KNIME rows
 	 * @param con
 	 * @param connection
 	 * @param subExec
 	 * @param rOutName
-	 * @param rowChunkSize
+	 * @param rowChunkSize	number of rows per block (see {@link RTransferChunker#getRowBlockSize(List, int)})
 	 * @throws RserveException
 	 * @throws CanceledExecutionException 
+	 * @throws REXPMismatchException 
 	 */
-	public void readDataFromR(BufferedDataContainer con, RConnection connection, ExecutionMonitor subExec, String rOutName, int rowChunkSize) throws RserveException, CanceledExecutionException {
+	public void readDataFromR(BufferedDataContainer con, RConnection connection, ExecutionMonitor subExec, String rOutName, int rowChunkSize) throws RserveException, CanceledExecutionException, REXPMismatchException {
+		
+		ArrayList<RDataColumn> cList = m_numCols > 0 ? m_columnChunks.get(0) : new ArrayList<RDataColumn>();
 		
-		ArrayList<RDataColumn> cList = m_columnChunks.get(0);
+		int blockSize = Math.max(1, rowChunkSize);
 		
-		// get dataframe chunks (by n rows)
-		int startRow = 1;
-		//int rowIdx = 0;
-		while(startRow <= m_numRows) {
-			int endRow = startRow + rowChunkSize - 1;
-			if(endRow > m_numRows) endRow = m_numRows;
-			subExec.setMessage("retrieve rows " + startRow + " to " + endRow + " from R (cannot be cancelled)");
-			subExec.checkCanceled();
-			if(m_numCols > 0) {
-				RList data = ((REXPGenericVector)connection.eval(rOutName + "[" + startRow + ":" + endRow + ",,drop = FALSE]")).asList();
+		ArrayBlockingQueue<RowBlock> queue = new ArrayBlockingQueue<RowBlock>(PULL_QUEUE_SIZE);
+		BlockFetcher fetcher = new BlockFetcher(connection, rOutName, cList, blockSize, queue);
+		Thread fetchThread = new Thread(fetcher, "R pull " + rOutName);
+		fetchThread.setDaemon(true);
+		fetchThread.start();
+		
+		try {
+			int startRow = 1;
+			while(startRow <= m_numRows) {
+				RowBlock block = takeBlock(queue, subExec);
+				int endRow = block.m_endRow;
+				
+				for(int j = 0; j < cList.size(); j++)
+					cList.get(j).addData(block.m_data[j]);
+				
+				subExec.setProgress((double)endRow/(double)m_numRows);
 				
-				for(RDataColumn col : cList) {
-					col.initDataVector(endRow - startRow);
-					col.addData((REXP)data.get(col.getName()));
+				int dataIdx = 0;
+				for(int i = startRow; i <= endRow; i++) {
+					subExec.setMessage("create row " + i);
+					subExec.checkCanceled();
+					
+					DefaultRow row = new DefaultRow(m_rowKeys[i-1], getListOfCells(dataIdx, cList));
+					con.addRowToTable(row);
+					dataIdx++;
 				}
+				
+				startRow = endRow + 1;
 			}
-			
-			subExec.setProgress((double)endRow/(double)m_numRows);
-			
-			int dataIdx = 0;
-			for(int i = startRow; i <= endRow; i++) {
-				subExec.setMessage("create row " + i);
+		} finally {
+			// stop fetching and wait until the connection is not used anymore
+			fetchThread.interrupt();
+			try {
+				fetchThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			for(RDataColumn col : cList)
+				col.clearData();
+		}
+		subExec.setProgress(1.0);
+	}
+	
+	/**
+	 * waits for the next row block from the fetching thread
+	 * @param queue
+	 * @param subExec
+	 * @return
+	 * @throws CanceledExecutionException
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 */
+	private RowBlock takeBlock(ArrayBlockingQueue<RowBlock> queue, ExecutionMonitor subExec) 
+			throws CanceledExecutionException, RserveException, REXPMismatchException {
+		RowBlock block = null;
+		try {
+			while(block == null) {
 				subExec.checkCanceled();
-				
-				DefaultRow row = new DefaultRow(m_rowKeys[i-1], getListOfCells(dataIdx, cList));
-				con.addRowToTable(row);
-				dataIdx++;
+				block = queue.poll(100, TimeUnit.MILLISECONDS);
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CanceledExecutionException("interrupted while waiting for data from R");
+		}
+		
+		if(block.m_error instanceof RserveException)
+			throw (RserveException) block.m_error;
+		if(block.m_error instanceof REXPMismatchException)
+			throw (REXPMismatchException) block.m_error;
+		if(block.m_error != null)
+			throw new IllegalStateException("failed to retrieve data from R", block.m_error);
+		
+		subExec.setMessage("retrieved rows " + block.m_startRow + " to " + block.m_endRow + " from R");
+		return block;
+	}
+	
+	/**
+	 * column vectors of one row block (or the error which occurred while fetching it)
+	 */
+	private static class RowBlock {
+		
+		/** first row - one based */
+		private final int m_startRow;
+		/** last row - one based */
+		private final int m_endRow;
+		/** column vectors in order of the column list */
+		private final REXP[] m_data;
+		/** exception thrown by the fetching thread */
+		private final Throwable m_error;
+		
+		private RowBlock(int startRow, int endRow, REXP[] data, Throwable error) {
+			m_startRow = startRow;
+			m_endRow = endRow;
+			m_data = data;
+			m_error = error;
+		}
+	}
+	
+	/**
+	 * fetches the column vectors of all row blocks from R and puts them into a bounded queue
+	 */
+	private class BlockFetcher implements Runnable {
+		
+		private final RConnection m_connection;
+		private final String m_rOutName;
+		private final List<RDataColumn> m_columns;
+		private final int m_blockSize;
+		private final ArrayBlockingQueue<RowBlock> m_queue;
+		/** R expression of the (one based) column indices */
+		private final String m_colIdx;
+		
+		private BlockFetcher(RConnection connection, String rOutName, List<RDataColumn> columns, int blockSize, ArrayBlockingQueue<RowBlock> queue) {
+			m_connection = connection;
+			m_rOutName = rOutName;
+			m_columns = columns;
+			m_blockSize = blockSize;
+			m_queue = queue;
 			
-			startRow = endRow + 1;
-		}	
-		subExec.setProgress(1.0);
+			StringBuilder colIdx = new StringBuilder("c(");
+			for(int j = 0; j < columns.size(); j++)
+				colIdx.append(j > 0 ? "," : "").append(columns.get(j).getIndex() + 1);
+			m_colIdx = colIdx.append(")").toString();
+		}
+
+		@Override
+		public void run() {
+			int startRow = 1;
+			try {
+				while(startRow <= m_numRows && !Thread.currentThread().isInterrupted()) {
+					int endRow = Math.min(startRow + m_blockSize - 1, m_numRows);
+					
+					// all columns of a block are fetched with one call
+					// READABLE EXAMPLE:
+					// unclass(kOut)[c(1,2)]										whole columns
+					// lapply(unclass(kOut)[c(1,2)], function(v) v[1:1000])		block of the columns
+					REXP[] data = new REXP[m_columns.size()];
+					if(data.length > 0) {
+						String cmd = "unclass(" + m_rOutName + ")[" + m_colIdx + "]";
+						if(startRow > 1 || endRow < m_numRows)
+							cmd = "lapply(" + cmd + ", function(v) v[" + startRow + ":" + endRow + "])";
+						RList vectors = m_connection.eval(cmd).asList();
+						for(int j = 0; j < data.length; j++)
+							data[j] = vectors.at(j);
+					}
+					
+					m_queue.put(new RowBlock(startRow, endRow, data, null));
+					startRow = endRow + 1;
+				}
+			} catch (InterruptedException e) {
+				// pull has been stopped
+			} catch (Throwable e) {
+				try {
+					m_queue.put(new RowBlock(startRow, startRow, null, e));
+				} catch (InterruptedException ie) {
+					// pull has been stopped
+				}
+			}
+		}
 	}
 
 	/**
@@ -350,6 +758,13 @@ public class RDataFrameContainer {
 		m_rowKeys = rowNames;
 	}
 
+	/**
+	 * @return number of rows
+	 */
+	public int getNumRows() {
+		return m_numRows;
+	}
+
 	/**
 	 * @return TRUE, if table contains at least one data row; FALSE otherwise
 	 */
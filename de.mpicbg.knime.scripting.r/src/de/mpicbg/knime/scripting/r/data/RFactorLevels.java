@@ -0,0 +1,76 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+import org.rosuda.REngine.REXPInteger;
+
+/**
+ * <p>
+ * factor levels of a nominal column
+ * </p>
+ * <p>
+ * Keeps the levels in order together with a prebuilt value-to-code hash, so each cell is
+ * encoded in constant time independent of the number of levels.
+ * </p>
+ */
+public class RFactorLevels {
+
+	/** levels in order of their codes */
+	private final String[] m_levels;
+
+	/** level => one-based code as expected by R */
+	private final HashMap<String, Integer> m_codes;
+
+	/**
+	 * @param levels	distinct level values in order
+	 */
+	public RFactorLevels(String[] levels) {
+		m_levels = levels;
+		m_codes = new HashMap<String, Integer>(levels.length * 2);
+		for(int i = 0; i < levels.length; i++)
+			m_codes.put(levels[i], i + 1);
+	}
+
+	/**
+	 * @param levels	distinct level values in order
+	 */
+	public RFactorLevels(Collection<String> levels) {
+		this(levels.toArray(new String[levels.size()]));
+	}
+
+	/**
+	 * @param value
+	 * @return one-based factor code of a value or {@link REXPInteger#NA} if missing or not a level
+	 */
+	public int encode(String value) {
+		if(value == null)
+			return REXPInteger.NA;
+		Integer code = m_codes.get(value);
+		return code == null ? REXPInteger.NA : code;
+	}
+
+	/**
+	 * @param code	one-based factor code
+	 * @return level value or null if the code is NA
+	 */
+	public String decode(int code) {
+		if(code == REXPInteger.NA || code < 1 || code > m_levels.length)
+			return null;
+		return m_levels[code - 1];
+	}
+
+	/**
+	 * @return levels in order (no copy)
+	 */
+	public String[] getLevels() {
+		return m_levels;
+	}
+
+	/**
+	 * @return number of levels
+	 */
+	public int size() {
+		return m_levels.length;
+	}
+}
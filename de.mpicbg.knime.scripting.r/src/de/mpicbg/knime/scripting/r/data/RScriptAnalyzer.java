@@ -0,0 +1,256 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * finds the columns of an input data frame an R script refers to (column projection, KNIME >>> R).
+ * The script is expected with filled template placeholders (see prepareScript of the node model).
+ * </p>
+ * <p>
+ * Recognized are <code>kIn$x</code>, <code>kIn$"x"</code>, <code>kIn[["x"]]</code>, <code>kIn["x"]</code>,
+ * <code>kIn[, "x"]</code> and <code>kIn[rows, c("x", "y")]</code>. Any other use of the data frame
+ * (e.g. <code>summary(kIn)</code>, <code>kIn[, i]</code>, <code>kIn[rows, ]</code>), the name of the data frame
+ * within a string or functions which might access variables by name (get, eval, source...)
+ * are treated as dynamic access, which requires all columns.
+ * </p>
+ */
+public class RScriptAnalyzer {
+
+	/** functions which might access the data frame without naming it in the script */
+	private static final Set<String> DYNAMIC_FUNCTIONS = new HashSet<String>(Arrays.asList(
+			"get", "get0", "mget", "eval", "evalq", "parse", "source", "sys.source", "attach", "environment", "globalenv"));
+
+	private RScriptAnalyzer() {
+		// static access only
+	}
+
+	/**
+	 * @param script		R script
+	 * @param varName		R variable name of the data frame
+	 * @return names of referenced columns (might contain names of columns which are created by the script),
+	 * 			null if the script accesses the data frame dynamically or not at all
+	 */
+	public static Set<String> getReferencedColumns(String script, String varName) {
+		if(script == null || script.trim().isEmpty()) return null;
+
+		List<Token> tokens = tokenize(script);
+		Pattern varInString = Pattern.compile("(^|[^\\w.])" + Pattern.quote(varName) + "([^\\w.]|$)");
+
+		Set<String> columns = new LinkedHashSet<String>();
+		boolean found = false;
+
+		for(int i = 0; i < tokens.size(); i++) {
+			Token t = tokens.get(i);
+
+			if(t.m_type == TokenType.STRING) {
+				if(varInString.matcher(t.m_text).find()) return null;
+				continue;
+			}
+			if(t.m_type != TokenType.NAME) continue;
+
+			if(DYNAMIC_FUNCTIONS.contains(t.m_text) && isOp(tokens, i + 1, "(")) return null;
+
+			if(!t.m_text.equals(varName)) continue;
+			// member of another object (x$kIn)
+			if(isOp(tokens, i - 1, "$") || isOp(tokens, i - 1, "@")) continue;
+
+			// nested references (kIn[kIn$x > 0, "y"]) are parsed separately
+			found = true;
+			if(parseAccess(tokens, i + 1, columns) < 0) return null;
+		}
+
+		return found ? columns : null;
+	}
+
+	/**
+	 * parses the column access following the data frame name
+	 * @param tokens
+	 * @param i			index of the token following the data frame name
+	 * @param columns	referenced columns are added
+	 * @return index of the token following the access, -1 if the access is dynamic
+	 */
+	private static int parseAccess(List<Token> tokens, int i, Set<String> columns) {
+		List<String> names = new ArrayList<String>();
+		int end;
+
+		if(isOp(tokens, i, "$")) {
+			// kIn$x, kIn$"x", kIn$`x`
+			if(i + 1 >= tokens.size()) return -1;
+			Token name = tokens.get(i + 1);
+			if(name.m_type != TokenType.NAME && name.m_type != TokenType.STRING) return -1;
+			names.add(name.m_text);
+			end = i + 2;
+		} else if(isOp(tokens, i, "[") && isOp(tokens, i + 1, "[")) {
+			// kIn[["x"]]
+			if(!isType(tokens, i + 2, TokenType.STRING) || !isOp(tokens, i + 3, "]") || !isOp(tokens, i + 4, "]")) return -1;
+			names.add(tokens.get(i + 2).m_text);
+			end = i + 5;
+		} else if(isOp(tokens, i, "[")) {
+			// kIn["x"], kIn[c("x", "y")], kIn[rows, "x"], kIn[rows, c("x", "y"), drop = FALSE]
+			int j = skipArgument(tokens, i + 1);
+			if(j < 0) return -1;
+			if(isOp(tokens, j, "]")) {
+				j = parseNames(tokens, i + 1, names);
+				if(j < 0 || !isOp(tokens, j, "]")) return -1;
+			} else {
+				j = parseNames(tokens, j + 1, names);
+				if(j < 0) return -1;
+				if(!isOp(tokens, j, "]")) {
+					if(!isOp(tokens, j, ",")) return -1;
+					j = skipToClosingBracket(tokens, j + 1);
+					if(j < 0) return -1;
+				}
+			}
+			end = j + 1;
+		} else
+			return -1;
+
+		// assignment to a column (kIn$x <- ...) does not need the column
+		if(isOp(tokens, end, "<-") || isOp(tokens, end, "="))
+			return end;
+
+		columns.addAll(names);
+		return end;
+	}
+
+	/**
+	 * parses a column selection: "x" or c("x", "y")
+	 * @param tokens
+	 * @param i			index of the first token of the selection
+	 * @param names		names are added
+	 * @return index of the token following the selection, -1 if the selection is not a constant list of names
+	 */
+	private static int parseNames(List<Token> tokens, int i, List<String> names) {
+		if(isType(tokens, i, TokenType.STRING)) {
+			names.add(tokens.get(i).m_text);
+			return i + 1;
+		}
+		if(!isType(tokens, i, TokenType.NAME) || !tokens.get(i).m_text.equals("c") || !isOp(tokens, i + 1, "("))
+			return -1;
+		int j = i + 2;
+		while(true) {
+			if(!isType(tokens, j, TokenType.STRING)) return -1;
+			names.add(tokens.get(j).m_text);
+			j++;
+			if(isOp(tokens, j, ")")) return j + 1;
+			if(!isOp(tokens, j, ",")) return -1;
+			j++;
+		}
+	}
+
+	/**
+	 * @param tokens
+	 * @param i		index of the first token of an argument within brackets
+	 * @return index of the ',' or ']' which ends the argument, -1 if there is none
+	 */
+	private static int skipArgument(List<Token> tokens, int i) {
+		int depth = 0;
+		for(int j = i; j < tokens.size(); j++) {
+			Token t = tokens.get(j);
+			if(t.m_type != TokenType.OP) continue;
+			if(t.m_text.equals("(") || t.m_text.equals("[") || t.m_text.equals("{")) depth++;
+			else if(t.m_text.equals(")") || t.m_text.equals("}")) depth--;
+			else if(t.m_text.equals("]")) {
+				if(depth == 0) return j;
+				depth--;
+			} else if(t.m_text.equals(",") && depth == 0) return j;
+			if(depth < 0) return -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param tokens
+	 * @param i		index of a token within brackets
+	 * @return index of the closing bracket, -1 if there is none
+	 */
+	private static int skipToClosingBracket(List<Token> tokens, int i) {
+		int j = i;
+		while(true) {
+			j = skipArgument(tokens, j);
+			if(j < 0 || isOp(tokens, j, "]")) return j;
+			j++;
+		}
+	}
+
+	private static boolean isOp(List<Token> tokens, int i, String op) {
+		return isType(tokens, i, TokenType.OP) && tokens.get(i).m_text.equals(op);
+	}
+
+	private static boolean isType(List<Token> tokens, int i, TokenType type) {
+		return i >= 0 && i < tokens.size() && tokens.get(i).m_type == type;
+	}
+
+	/**
+	 * splits the script into names (including `quoted` names), strings (unescaped), operators and other tokens;
+	 * comments and white spaces are dropped
+	 * @param script
+	 * @return tokens
+	 */
+	private static List<Token> tokenize(String script) {
+		List<Token> tokens = new ArrayList<Token>();
+		int n = script.length();
+		int i = 0;
+		while(i < n) {
+			char c = script.charAt(i);
+			if(Character.isWhitespace(c)) {
+				i++;
+			} else if(c == '#') {
+				while(i < n && script.charAt(i) != '\n') i++;
+			} else if(c == '"' || c == '\'' || c == '`') {
+				StringBuilder sb = new StringBuilder();
+				i++;
+				while(i < n && script.charAt(i) != c) {
+					char s = script.charAt(i);
+					if(s == '\\' && i + 1 < n) {
+						i++;
+						s = script.charAt(i);
+						if(s == 'n') s = '\n';
+						else if(s == 't') s = '\t';
+					}
+					sb.append(s);
+					i++;
+				}
+				i++;
+				tokens.add(new Token(c == '`' ? TokenType.NAME : TokenType.STRING, sb.toString()));
+			} else if(Character.isLetter(c) || c == '.' || c == '_') {
+				int start = i;
+				while(i < n && (Character.isLetterOrDigit(script.charAt(i)) || script.charAt(i) == '.' || script.charAt(i) == '_')) i++;
+				tokens.add(new Token(TokenType.NAME, script.substring(start, i)));
+			} else if(Character.isDigit(c)) {
+				int start = i;
+				while(i < n && (Character.isLetterOrDigit(script.charAt(i)) || script.charAt(i) == '.')) i++;
+				tokens.add(new Token(TokenType.OTHER, script.substring(start, i)));
+			} else if(c == '<' && script.startsWith("<-", i)) {
+				tokens.add(new Token(TokenType.OP, "<-"));
+				i += 2;
+			} else if(c == '=' && script.startsWith("==", i)) {
+				tokens.add(new Token(TokenType.OP, "=="));
+				i += 2;
+			} else {
+				tokens.add(new Token(TokenType.OP, String.valueOf(c)));
+				i++;
+			}
+		}
+		return tokens;
+	}
+
+	private enum TokenType { NAME, STRING, OP, OTHER };
+
+	private static class Token {
+		private final TokenType m_type;
+		private final String m_text;
+
+		private Token(TokenType type, String text) {
+			m_type = type;
+			m_text = text;
+		}
+	}
+}
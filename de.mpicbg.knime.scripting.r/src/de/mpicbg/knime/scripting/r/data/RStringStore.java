@@ -0,0 +1,195 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.rosuda.REngine.REXPInteger;
+
+/**
+ * <p>
+ * dictionary-coded storage for string columns
+ * </p>
+ * <p>
+ * Each distinct value is kept only once, rows refer to it by an integer code. If the number
+ * of distinct values exceeds {@link #MAX_DICTIONARY_SIZE}, the store falls back to a plain
+ * String array (high cardinality columns would not benefit from the dictionary).
+ * </p>
+ */
+public class RStringStore {
+
+	/** maximum number of distinct values which are dictionary-coded */
+	public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+	/** code for missing values */
+	public static final int MISSING_CODE = -1;
+
+	/** dictionary codes per row (null if not dictionary-coded) */
+	private int[] m_codes;
+
+	/** distinct values in order of their first occurrence */
+	private ArrayList<String> m_dictionary;
+
+	/** distinct value => dictionary code */
+	private HashMap<String, Integer> m_dictionaryIndex;
+
+	/** UTF-8 length of the distinct values in order of their codes (computed on demand) */
+	private ArrayList<Integer> m_dictionaryBytes;
+
+	/** plain values per row (null if dictionary-coded) */
+	private String[] m_values;
+
+	/**
+	 * creates a dictionary-coded store with a given number of rows
+	 * @param size
+	 */
+	public RStringStore(int size) {
+		m_codes = new int[size];
+		m_dictionary = new ArrayList<String>();
+		m_dictionaryIndex = new HashMap<String, Integer>();
+		m_dictionaryBytes = new ArrayList<Integer>();
+	}
+
+	/**
+	 * creates a plain store which wraps the given values (no copy)
+	 * @param values
+	 */
+	public RStringStore(String[] values) {
+		m_values = values;
+	}
+
+	/**
+	 * @return number of rows
+	 */
+	public int size() {
+		return isDictionaryCoded() ? m_codes.length : m_values.length;
+	}
+
+	/**
+	 * @return TRUE, if values are stored as dictionary codes
+	 */
+	public boolean isDictionaryCoded() {
+		return m_codes != null;
+	}
+
+	/**
+	 * stores a value at a given row index
+	 * @param rowIdx
+	 * @param value 	null for missing values
+	 */
+	public void set(int rowIdx, String value) {
+		if(!isDictionaryCoded()) {
+			m_values[rowIdx] = value;
+			return;
+		}
+
+		if(value == null) {
+			m_codes[rowIdx] = MISSING_CODE;
+			return;
+		}
+
+		Integer code = m_dictionaryIndex.get(value);
+		if(code == null) {
+			if(m_dictionary.size() == MAX_DICTIONARY_SIZE) {
+				decode();
+				m_values[rowIdx] = value;
+				return;
+			}
+			code = m_dictionary.size();
+			m_dictionary.add(value);
+			m_dictionaryIndex.put(value, code);
+		}
+		m_codes[rowIdx] = code;
+	}
+
+	/**
+	 * @param rowIdx
+	 * @return value at a given row index, null if missing
+	 */
+	public String get(int rowIdx) {
+		if(!isDictionaryCoded())
+			return m_values[rowIdx];
+
+		int code = m_codes[rowIdx];
+		return code == MISSING_CODE ? null : m_dictionary.get(code);
+	}
+
+	/**
+	 * @return all values as String array; values of a dictionary-coded store share their String objects
+	 */
+	public String[] toArray() {
+		if(!isDictionaryCoded())
+			return m_values;
+
+		String[] values = new String[m_codes.length];
+		for(int i = 0; i < m_codes.length; i++)
+			values[i] = get(i);
+		return values;
+	}
+
+	/**
+	 * @return dictionary codes (zero-based, {@link #MISSING_CODE} for missing values) or null if not dictionary-coded
+	 */
+	public int[] getCodes() {
+		return m_codes;
+	}
+
+	/**
+	 * @return distinct values in order of their codes or null if not dictionary-coded
+	 */
+	public String[] getDictionary() {
+		if(!isDictionaryCoded())
+			return null;
+		return m_dictionary.toArray(new String[m_dictionary.size()]);
+	}
+
+	/**
+	 * checks whether the column should be transferred to R as codes and levels; this is the case if
+	 * integer codes plus the distinct values are smaller than the plain strings (low cardinality)
+	 * @return TRUE, if the store is dictionary-coded and the dictionary pays off for the transfer
+	 */
+	public boolean isLowCardinality() {
+		if(!isDictionaryCoded() || m_codes.length == 0)
+			return false;
+
+		// message bytes of the strings (UTF-8 + terminating zero), missing values are sent as "NA"
+		for(int i = m_dictionaryBytes.size(); i < m_dictionary.size(); i++)
+			m_dictionaryBytes.add(m_dictionary.get(i).getBytes(StandardCharsets.UTF_8).length + 1);
+		int[] valueBytes = new int[m_dictionaryBytes.size()];
+		long dictionaryBytes = 0;
+		for(int i = 0; i < valueBytes.length; i++) {
+			valueBytes[i] = m_dictionaryBytes.get(i);
+			dictionaryBytes += valueBytes[i];
+		}
+		long plainBytes = 0;
+		for(int code : m_codes)
+			plainBytes += code == MISSING_CODE ? 2 : valueBytes[code];
+
+		return dictionaryBytes + 4L * m_codes.length < plainBytes;
+	}
+
+	/**
+	 * @return one-based codes as expected by R factors ({@link REXPInteger#NA} for missing values) 
+	 * 		or null if not dictionary-coded
+	 */
+	public int[] getFactorCodes() {
+		if(!isDictionaryCoded())
+			return null;
+
+		int[] codes = new int[m_codes.length];
+		for(int i = 0; i < codes.length; i++)
+			codes[i] = m_codes[i] == MISSING_CODE ? REXPInteger.NA : m_codes[i] + 1;
+		return codes;
+	}
+
+	/**
+	 * switch to plain storage
+	 */
+	private void decode() {
+		m_values = toArray();
+		m_codes = null;
+		m_dictionary = null;
+		m_dictionaryIndex = null;
+		m_dictionaryBytes = null;
+	}
+}
@@ -0,0 +1,170 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.StringValue;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.NodeLogger;
+
+import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
+
+/**
+ * <p>
+ * sizes column chunks (KNIME >>> R) and row blocks (R >>> KNIME) if the chunk settings of the node are not set
+ * </p>
+ * <p>
+ * The size of a single transfer message is limited by the target message size (R-scripting preferences) and
+ * by a share of the free JVM heap. Bytes per cell are measured from a sample of the data for string columns
+ * (from the KNIME table when pushing, on R side when pulling).
+ * </p>
+ */
+public class RTransferChunker {
+
+	/** share of the free heap which might be used for the data of one transfer message */
+	private static final double HEAP_SHARE = 0.25;
+
+	/** number of rows used to measure the size of string cells */
+	public static final int SAMPLE_ROWS = 1000;
+
+	/** message bytes per cell of a string column if no value could be sampled */
+	private static final long DEFAULT_STRING_BYTES = 16;
+
+	/** maximum number of rows pulled from R at once; more blocks allow to overlap transfer and row creation */
+	public static final int MAX_PULL_BLOCK_ROWS = 100000;
+
+	/** number of row blocks in memory while pulling (see {@link RDataFrameContainer#readDataFromR}) */
+	private static final int PULL_BUFFERED_BLOCKS = 4;
+
+	/** message size in bytes used for chunking */
+	private final long m_messageBytes;
+
+	/** free JVM heap at the time of creation */
+	private final long m_freeHeap;
+
+	private NodeLogger logger = NodeLogger.getLogger(RTransferChunker.class);
+
+	/**
+	 * @param targetMessageBytes	target size of a single transfer message
+	 */
+	public RTransferChunker(long targetMessageBytes) {
+		m_freeHeap = getFreeHeap();
+		m_messageBytes = Math.max(1, Math.min(targetMessageBytes, (long) (m_freeHeap * HEAP_SHARE)));
+	}
+
+	/**
+	 * @return bytes which might still be allocated on the JVM heap
+	 */
+	public static long getFreeHeap() {
+		Runtime rt = Runtime.getRuntime();
+		return rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+	}
+
+	/**
+	 * @return message size in bytes used for chunking
+	 */
+	public long getMessageBytes() {
+		return m_messageBytes;
+	}
+
+	/**
+	 * measures the number of bytes per cell a column needs in a transfer message;
+	 * for string columns the UTF-8 length is sampled from the first rows of the table
+	 * @param table
+	 * @param columns
+	 * @return bytes per cell in order of the column list
+	 */
+	public long[] measureBytesPerCell(BufferedDataTable table, List<RDataColumn> columns) {
+		long[] bytesPerCell = new long[columns.size()];
+		long[] stringBytes = new long[columns.size()];
+		boolean hasStrings = false;
+
+		for(int i = 0; i < columns.size(); i++) {
+			RDataColumn column = columns.get(i);
+			if(column.getType().equals(RType.R_STRING))
+				hasStrings = true;
+			else
+				bytesPerCell[i] = column.getBytesPerCell();
+		}
+		if(!hasStrings) return bytesPerCell;
+
+		int sampled = 0;
+		for(DataRow row : table) {
+			if(sampled == SAMPLE_ROWS) break;
+			for(int i = 0; i < columns.size(); i++) {
+				RDataColumn column = columns.get(i);
+				if(!column.getType().equals(RType.R_STRING)) continue;
+				DataCell cell = row.getCell(column.getIndex());
+				// string + terminating 0
+				stringBytes[i] += (cell.isMissing() ? 1 : ((StringValue) cell).getStringValue().getBytes(StandardCharsets.UTF_8).length) + 1;
+			}
+			sampled ++;
+		}
+
+		for(int i = 0; i < columns.size(); i++) {
+			if(columns.get(i).getType().equals(RType.R_STRING))
+				bytesPerCell[i] = sampled > 0 ? Math.max(1, stringBytes[i] / sampled) : DEFAULT_STRING_BYTES;
+		}
+		return bytesPerCell;
+	}
+
+	/**
+	 * splits columns into chunks which do not exceed the message size
+	 * (a single column which exceeds the message size gets its own chunk)
+	 * @param columns
+	 * @param bytesPerCell	see {@link #measureBytesPerCell(BufferedDataTable, List)}
+	 * @param numRows
+	 * @return column chunks
+	 */
+	public List<List<RDataColumn>> splitColumns(List<RDataColumn> columns, long[] bytesPerCell, int numRows) {
+		List<List<RDataColumn>> chunks = new ArrayList<List<RDataColumn>>();
+		List<RDataColumn> chunk = new ArrayList<RDataColumn>();
+		long chunkBytes = 0;
+
+		for(int i = 0; i < columns.size(); i++) {
+			long columnBytes = bytesPerCell[i] * Math.max(1, numRows);
+			if(!chunk.isEmpty() && chunkBytes + columnBytes > m_messageBytes) {
+				chunks.add(chunk);
+				chunk = new ArrayList<RDataColumn>();
+				chunkBytes = 0;
+			}
+			chunk.add(columns.get(i));
+			chunkBytes += columnBytes;
+		}
+		if(!chunk.isEmpty())
+			chunks.add(chunk);
+
+		logger.info("push " + columns.size() + " column(s) in " + chunks.size() + " chunk(s) "
+				+ "(target message size " + toMB(m_messageBytes) + " MB, free heap " + toMB(m_freeHeap) + " MB)");
+		return chunks;
+	}
+
+	/**
+	 * @param columns	columns with sampled message sizes (see {@link RDataColumn#getMessageBytesPerCell()})
+	 * @param numRows
+	 * @return number of rows to pull from R at once;
+	 * each column vector of a block fits into the message size and all buffered blocks fit into the heap share
+	 */
+	public int getRowBlockSize(List<RDataColumn> columns, int numRows) {
+		long maxBytesPerCell = 1;
+		long bytesPerRow = 1;
+		for(RDataColumn column : columns) {
+			maxBytesPerCell = Math.max(maxBytesPerCell, column.getMessageBytesPerCell());
+			bytesPerRow += Math.max(column.getBytesPerCell(), column.getMessageBytesPerCell());
+		}
+
+		long rows = Math.min(m_messageBytes / maxBytesPerCell, (long) (m_freeHeap * HEAP_SHARE) / (bytesPerRow * PULL_BUFFERED_BLOCKS));
+		int blockSize = (int) Math.max(1, Math.min(Math.min(rows, MAX_PULL_BLOCK_ROWS), Math.max(1, numRows)));
+
+		logger.info("pull " + numRows + " row(s) in blocks of " + blockSize + " rows "
+				+ "(target message size " + toMB(m_messageBytes) + " MB, free heap " + toMB(m_freeHeap) + " MB)");
+		return blockSize;
+	}
+
+	private static long toMB(long bytes) {
+		return bytes / (1024 * 1024);
+	}
+}
@@ -1,18 +1,8 @@
 package de.mpicbg.knime.scripting.r.generic;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.nio.file.Files;
 import java.util.Collections;
 
-import javax.swing.ImageIcon;
-
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
-import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
@@ -129,33 +119,6 @@ public class GenericRPlotNodeModel extends AbstractRPlotNodeModel {
         return nodeOutput;
 	}
 
-	/**
-	 * overwrite this method to support old internal image format (ImageIcon)
-	 */
-    @Override
-	protected void saveInternals(File nodeDir, ExecutionMonitor executionMonitor)
-			throws IOException, CanceledExecutionException {
-    	if (m_rWorkspaceFile != null) {
-            File f = new File(nodeDir, "pushtable.R");
-
-            Files.copy(m_rWorkspaceFile.toPath(), f.toPath());
-        }
-
-        if (m_image != null) {
-        	File imageFile = new File(nodeDir, "image.bin");
-
-            FileOutputStream f_out = new FileOutputStream(imageFile);
-
-            // Write object with ObjectOutputStream
-            ObjectOutputStream obj_out = new ObjectOutputStream(new BufferedOutputStream(f_out));
-
-            // Write object out to disk
-
-            obj_out.writeObject(new ImageIcon(m_image));
-            obj_out.close();
-        }
-	}
-
 	/**
      * {@inheritDoc}
      */
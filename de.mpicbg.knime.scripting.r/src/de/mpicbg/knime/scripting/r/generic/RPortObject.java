@@ -204,7 +204,7 @@ public class RPortObject implements PortObject {
             jep.setText("Failed to retrieve the structure of R objects from port file " + getFilePath());
         }
         
-        connection.close();
+        RUtils.releaseConnection(connection);
 
         panel.add(new JScrollPane(jep));
         return new JComponent[]{panel};
@@ -0,0 +1,154 @@
+package de.mpicbg.knime.scripting.r.misc;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPInteger;
+
+import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
+import de.mpicbg.knime.scripting.r.data.RDataColumn;
+
+
+/**
+ * Compares the push-side column buffers (KNIME >>> R) of {@link RDataColumn} with the former boxed
+ * implementation (Double[]/Integer[] + ArrayUtils.toPrimitive).
+ * Reports allocated bytes, retained heap of the filled buffer and GC time for each variant.
+ * <p>
+ * usage: RDataColumnBenchmark [number of rows, default 10M]
+ * </p>
+ */
+public class RDataColumnBenchmark {
+
+    private static final int DEFAULT_ROWS = 10000000;
+
+    public static void main(String[] args) {
+        int numRows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+
+        // the cells are created once, they are not part of the measurement
+        DataCell[] doubleCells = new DataCell[numRows];
+        DataCell[] intCells = new DataCell[numRows];
+        for (int i = 0; i < numRows; i++) {
+            doubleCells[i] = i % 100 == 0 ? DataType.getMissingCell() : new DoubleCell(i * 0.5);
+            intCells[i] = i % 100 == 0 ? DataType.getMissingCell() : new IntCell(i);
+        }
+
+        // warm up
+        runBoxed(doubleCells, intCells);
+        runPrimitive(doubleCells, intCells);
+
+        System.out.println("rows: " + numRows);
+        System.out.println(String.format("%-10s %18s %18s %12s", "variant", "allocated (MB)", "retained (MB)", "GC (ms)"));
+        report("boxed", measure(doubleCells, intCells, true));
+        report("primitive", measure(doubleCells, intCells, false));
+    }
+
+    private static void report(String variant, long[] result) {
+        System.out.println(String.format("%-10s %18.1f %18.1f %12d", variant, result[0] / 1048576.0, result[1] / 1048576.0, result[2]));
+    }
+
+    /**
+     * @return allocated bytes, retained bytes of the filled buffers, gc time (ms)
+     */
+    private static long[] measure(DataCell[] doubleCells, DataCell[] intCells, boolean boxed) {
+        System.gc();
+        long usedBefore = usedHeap();
+        long gcBefore = gcTime();
+        long allocBefore = allocatedBytes();
+
+        Object buffers = boxed ? fillBoxed(doubleCells, intCells) : fillPrimitive(doubleCells, intCells);
+
+        long allocFill = allocatedBytes() - allocBefore;
+        long gcFill = gcTime() - gcBefore;
+        System.gc();
+        long retained = usedHeap() - usedBefore;
+
+        allocBefore = allocatedBytes();
+        gcBefore = gcTime();
+        REXP[] result = boxed ? toREXPBoxed((Object[]) buffers) : toREXPPrimitive((RDataColumn[]) buffers);
+        long allocated = allocFill + allocatedBytes() - allocBefore;
+        long gc = gcFill + gcTime() - gcBefore;
+
+        if (result[0].length() != doubleCells.length) throw new IllegalStateException();
+
+        return new long[]{allocated, retained, gc};
+    }
+
+    private static REXP[] runBoxed(DataCell[] doubleCells, DataCell[] intCells) {
+        return toREXPBoxed(fillBoxed(doubleCells, intCells));
+    }
+
+    private static REXP[] runPrimitive(DataCell[] doubleCells, DataCell[] intCells) {
+        return toREXPPrimitive(fillPrimitive(doubleCells, intCells));
+    }
+
+    /**
+     * former implementation: boxed data vectors...
+     */
+    private static Object[] fillBoxed(DataCell[] doubleCells, DataCell[] intCells) {
+        int n = doubleCells.length;
+        Double[] doubles = new Double[n];
+        Integer[] ints = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            doubles[i] = doubleCells[i].isMissing() ? REXPDouble.NA : ((DoubleCell) doubleCells[i]).getDoubleValue();
+            ints[i] = intCells[i].isMissing() ? REXPInteger.NA : ((IntCell) intCells[i]).getIntValue();
+        }
+        return new Object[]{doubles, ints};
+    }
+
+    /**
+     * ...copied to primitive arrays for the REXP
+     */
+    private static REXP[] toREXPBoxed(Object[] buffers) {
+        return new REXP[]{new REXPDouble(ArrayUtils.toPrimitive((Double[]) buffers[0])),
+                new REXPInteger(ArrayUtils.toPrimitive((Integer[]) buffers[1]))};
+    }
+
+    /**
+     * current implementation: primitive data vectors...
+     */
+    private static RDataColumn[] fillPrimitive(DataCell[] doubleCells, DataCell[] intCells) {
+        int n = doubleCells.length;
+        RDataColumn doubleCol = new RDataColumn("d", RType.R_DOUBLE, 0);
+        RDataColumn intCol = new RDataColumn("i", RType.R_INT, 1);
+        doubleCol.initDataVector(n);
+        intCol.initDataVector(n);
+        for (int i = 0; i < n; i++) {
+            doubleCol.addData(doubleCells[i], i);
+            intCol.addData(intCells[i], i);
+        }
+        return new RDataColumn[]{doubleCol, intCol};
+    }
+
+    /**
+     * ...passed to the REXP without copy
+     */
+    private static REXP[] toREXPPrimitive(RDataColumn[] columns) {
+        return new REXP[]{columns[0].getREXPData(), columns[1].getREXPData()};
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0, gc.getCollectionTime());
+        return time;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}
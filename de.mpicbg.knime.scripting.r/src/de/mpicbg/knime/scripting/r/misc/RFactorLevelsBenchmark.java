@@ -0,0 +1,101 @@
+package de.mpicbg.knime.scripting.r.misc;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.def.StringCell;
+import org.rosuda.REngine.REXPInteger;
+
+import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
+import de.mpicbg.knime.scripting.r.data.RDataColumn;
+
+
+/**
+ * Compares the throughput of factor encoding (KNIME >>> R) of {@link RDataColumn} with the former
+ * implementation (linear search through a HashMap&lt;Integer,String&gt; per cell) at 10, 500 and 10,000 levels.
+ * <p>
+ * usage: RFactorLevelsBenchmark [number of rows, default 1M]
+ * </p>
+ */
+public class RFactorLevelsBenchmark {
+
+    private static final int DEFAULT_ROWS = 1000000;
+
+    private static final int[] NUM_LEVELS = {10, 500, 10000};
+
+    public static void main(String[] args) {
+        int numRows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+
+        System.out.println("rows: " + numRows);
+        System.out.println(String.format("%-8s %22s %22s", "levels", "former (rows/s)", "hashed (rows/s)"));
+
+        for (int numLevels : NUM_LEVELS) {
+            Set<DataCell> levels = new LinkedHashSet<DataCell>();
+            for (int i = 0; i < numLevels; i++)
+                levels.add(new StringCell("level_" + i));
+            DataCell[] levelCells = levels.toArray(new DataCell[numLevels]);
+
+            Random random = new Random(42);
+            DataCell[] cells = new DataCell[numRows];
+            for (int i = 0; i < numRows; i++)
+                cells[i] = levelCells[random.nextInt(numLevels)];
+
+            // the former implementation is quadratic, limit its rows to keep the run time reasonable
+            int formerRows = (int) Math.min(numRows, 2e9 / numLevels / 100);
+
+            // warm up
+            runFormer(levels, cells, Math.min(formerRows, 10000));
+            runHashed(levels, cells, Math.min(numRows, 10000));
+
+            long start = System.nanoTime();
+            runFormer(levels, cells, formerRows);
+            double former = formerRows / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            runHashed(levels, cells, numRows);
+            double hashed = numRows / ((System.nanoTime() - start) / 1e9);
+
+            System.out.println(String.format("%-8d %22.0f %22.0f", numLevels, former, hashed));
+        }
+    }
+
+    /**
+     * former implementation: containsValue + loop over all levels per cell
+     */
+    private static int[] runFormer(Set<DataCell> levels, DataCell[] cells, int n) {
+        HashMap<Integer, String> levelMap = new HashMap<Integer, String>();
+        int i = 0;
+        for (DataCell cell : levels)
+            levelMap.put(i++, ((StringValue) cell).getStringValue());
+
+        int[] codes = new int[n];
+        for (int row = 0; row < n; row++) {
+            String value = ((StringValue) cells[row]).getStringValue();
+            codes[row] = REXPInteger.NA;
+            if (levelMap.containsValue(value)) {
+                for (int j : levelMap.keySet())
+                    if (levelMap.get(j).equals(value)) {
+                        codes[row] = j + 1;
+                        break;
+                    }
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * current implementation: prebuilt value => code hash
+     */
+    private static RDataColumn runHashed(Set<DataCell> levels, DataCell[] cells, int n) {
+        RDataColumn column = new RDataColumn("f", RType.R_FACTOR, 0);
+        column.setLevels(levels);
+        column.initDataVector(n);
+        for (int row = 0; row < n; row++)
+            column.addData(cells[row], row);
+        return column;
+    }
+}
@@ -2,6 +2,8 @@ package de.mpicbg.knime.scripting.r.node.plot;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
@@ -11,32 +13,75 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JPanel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
+import org.knime.core.node.NodeLogger;
 import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
 
 import de.mpicbg.knime.scripting.core.ImageClipper;
+import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
 import de.mpicbg.knime.scripting.r.RUtils;
 import de.mpicbg.knime.scripting.r.plots.AbstractRPlotNodeModel;
+import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
 
 
 /**
  * A renderer which allows to display r-plots. It automatically adapts to the panel size by rescaling the figures on
- * resize. Figure will be recreated by mouse click
+ * resize. Figure will be recreated by mouse click or, if enabled in the preferences, once resizing stopped.
+ * <p>
+ * Images are rendered in the background with an R session which keeps the plot workspace loaded as long as the
+ * canvas is shown. Rendered images are cached by size.
+ * </p>
  *
  * @author Holger Brandl, Antje Janosch
  */
 @SuppressWarnings("serial")
 public class RPlotCanvas extends JPanel {
 
+    /** delay (ms) after the last resize event before the image is recreated */
+    private static final int RESIZE_DELAY = 300;
+
+    /** number of rendered images kept */
+    private static final int IMAGE_CACHE_SIZE = 10;
+
+    /** hidden R variable with a copy of the plot workspace (to restore it before each rendering) */
+    private static final String WS_SNAPSHOT = ".knime.ws.snapshot";
+
     private BufferedImage m_baseImage;
     private BufferedImage m_scaledImage;
     private AbstractRPlotNodeModel m_plotModel;
 
-    // flag to mark the process of recreating the image
-    private boolean isReCreatingImage = false;
-    
+    /** rendered images by size, least recently used first */
+    private final Map<Dimension, BufferedImage> m_imageCache = new LinkedHashMap<Dimension, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Dimension, BufferedImage> eldest) {
+            return size() > IMAGE_CACHE_SIZE;
+        }
+    };
+
+    /** R session with the plot workspace loaded (null until the first rendering) */
+    private RConnection m_session = null;
+
+    /** rendering in progress */
+    private SwingWorker<BufferedImage, Void> m_worker = null;
+    /** another rendering was requested while rendering */
+    private boolean m_renderPending = false;
+    /** canvas was disposed while rendering, release the R session afterwards */
+    private boolean m_disposePending = false;
+
+    /** triggers rendering after resizing stopped */
+    private final Timer m_resizeTimer;
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(RPlotCanvas.class);
+
     // NOTE: Failed to trigger repainting as soon as the mouse is released after resizing
     // instead: rescale while resizing and use single mouse click to recreate the plot
 
@@ -50,16 +95,33 @@ public class RPlotCanvas extends JPanel {
 
         this.m_plotModel = plotModel;
         m_baseImage = plotModel.getImage();
-        
+        if(m_baseImage != null)
+            m_imageCache.put(new Dimension(m_baseImage.getWidth(), m_baseImage.getHeight()), m_baseImage);
+
+        m_resizeTimer = new Timer(RESIZE_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                recreateImage();
+            }
+        });
+        m_resizeTimer.setRepeats(false);
+
         // if component resized
         addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(ComponentEvent e) {
-            	           	
-                if (!isVisible()) {
+
+                if (!isVisible() || m_baseImage == null) {
+                    return;
+                }
+
+                BufferedImage cached = m_imageCache.get(getSize());
+                if (cached != null) {
+                    m_baseImage = cached;
+                    m_scaledImage = null;
                     return;
                 }
-                
+
                 // scale image
                 AffineTransform at = AffineTransform.getScaleInstance((double) getWidth() / m_baseImage.getWidth(null),
                 		(double) getHeight() / m_baseImage.getHeight(null));
@@ -67,6 +129,8 @@ public class RPlotCanvas extends JPanel {
                 AffineTransformOp op = new AffineTransformOp(at, AffineTransformOp.TYPE_BILINEAR);
                 m_scaledImage = op.filter(m_baseImage, null);
 
+                if (R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.REPAINT_ON_RESIZE))
+                    m_resizeTimer.restart();
             }
         });
 
@@ -74,14 +138,7 @@ public class RPlotCanvas extends JPanel {
         addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent mouseEvent) {
-                if (!isReCreatingImage) {
-                    isReCreatingImage = true;
-                    recreateImage();
-                    isReCreatingImage = false;
-
-                    invalidate();
-                    repaint();
-                }
+                recreateImage();
             }
         });
 
@@ -101,28 +158,114 @@ public class RPlotCanvas extends JPanel {
     }
 
     /**
-     * runs R code again to recreate the image with the panel dimensions
+     * runs R code again (in the background) to recreate the image with the panel dimensions;
+     * the scaled image is shown until the new image is available
      */
     public void recreateImage() {
-        RConnection connection = null;
-        try {
-            connection = RUtils.createConnection();
+        if (m_worker != null) {
+            m_renderPending = true;
+            return;
+        }
 
-            RUtils.loadWorkspace(m_plotModel.getWSFile(), connection);
-            String script = m_plotModel.prepareScript();
-            BufferedImage image = AbstractRPlotNodeModel.createImage(connection, script, getWidth(), getHeight(), m_plotModel.getDevice());
+        final Dimension size = getSize();
+        if (size.width <= 0 || size.height <= 0) return;
 
-            connection.close();
+        BufferedImage cached = m_imageCache.get(size);
+        if (cached != null) {
+            showImage(cached);
+            return;
+        }
 
-            m_baseImage = image;
-            m_scaledImage = null;
+        m_worker = new SwingWorker<BufferedImage, Void>() {
+            @Override
+            protected BufferedImage doInBackground() throws Exception {
+                return renderImage(size.width, size.height);
+            }
+
+            @Override
+            protected void done() {
+                m_worker = null;
+                if (m_disposePending) {
+                    m_disposePending = false;
+                    releaseSession();
+                    return;
+                }
+                try {
+                    BufferedImage image = get();
+                    m_imageCache.put(size, image);
+                    if (size.equals(getSize()))
+                        showImage(image);
+                } catch (InterruptedException | ExecutionException e) {
+                    LOGGER.warn("Failed to recreate the plot: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+                }
 
-        } catch (Exception e1) {
-            if (connection != null) {
-                connection.close();
+                if (m_renderPending) {
+                    m_renderPending = false;
+                    recreateImage();
+                }
+            }
+        };
+        m_worker.execute();
+    }
+
+    /**
+     * renders the image with the R session of this canvas (loads the plot workspace on first use)
+     * @param width
+     * @param height
+     * @return image
+     * @throws KnimeScriptingException
+     * @throws RserveException
+     */
+    private synchronized BufferedImage renderImage(int width, int height) throws KnimeScriptingException, RserveException {
+        if (m_session == null) {
+            RConnection connection = RUtils.createConnection();
+            try {
+                RUtils.loadWorkspace(m_plotModel.getWSFile(), connection);
+                connection.voidEval(WS_SNAPSHOT + " <- as.list(globalenv(), all.names = TRUE)");
+            } catch (KnimeScriptingException | RserveException e) {
+                RUtils.releaseConnection(connection);
+                throw e;
             }
-            throw new RuntimeException(e1);
+            m_session = connection;
+        } else {
+            // restore the plot workspace, the script might have changed it (copies share memory until modified)
+            m_session.voidEval("rm(list = setdiff(ls(all.names = TRUE), \"" + WS_SNAPSHOT + "\")); "
+                    + "invisible(list2env(" + WS_SNAPSHOT + ", envir = globalenv()))");
         }
+
+        String script = m_plotModel.prepareScript();
+        return AbstractRPlotNodeModel.createImage(m_session, script, width, height, m_plotModel.getDevice());
+    }
+
+    private void showImage(BufferedImage image) {
+        m_baseImage = image;
+        m_scaledImage = null;
+        invalidate();
+        repaint();
+    }
+
+    /**
+     * gives the R session back to the connection pool
+     */
+    public void dispose() {
+        m_resizeTimer.stop();
+        m_renderPending = false;
+        // do not block the EDT while rendering
+        if (m_worker != null)
+            m_disposePending = true;
+        else
+            releaseSession();
+    }
+
+    private synchronized void releaseSession() {
+        RUtils.releaseConnection(m_session);
+        m_session = null;
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        dispose();
     }
 
     /**
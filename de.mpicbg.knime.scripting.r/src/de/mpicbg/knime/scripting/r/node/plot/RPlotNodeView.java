@@ -12,6 +12,9 @@ import de.mpicbg.knime.scripting.r.plots.AbstractRPlotNodeModel;
  */
 public class RPlotNodeView<RPlotModel extends AbstractRPlotNodeModel> extends NodeView<RPlotModel> {
 
+    /** canvas currently shown (holds an R session) */
+    private RPlotCanvas m_canvas = null;
+
     /**
      * Creates a new view.
      *
@@ -26,13 +29,25 @@ public class RPlotNodeView<RPlotModel extends AbstractRPlotNodeModel> extends No
 
 
     private void updateView(RPlotModel nodeModel) {
+        disposeCanvas();
+
         if (nodeModel.getWSFile() == null) {
             nodeModel.setPlotWarning();
             return;
         }
 
-        RPlotCanvas rPlotCanvas = new RPlotCanvas(nodeModel);
-        setComponent(rPlotCanvas);
+        m_canvas = new RPlotCanvas(nodeModel);
+        setComponent(m_canvas);
+    }
+
+    /**
+     * gives the R session of the current canvas back
+     */
+    private void disposeCanvas() {
+        if (m_canvas != null) {
+            m_canvas.dispose();
+            m_canvas = null;
+        }
     }
 
 
@@ -59,8 +74,7 @@ public class RPlotNodeView<RPlotModel extends AbstractRPlotNodeModel> extends No
      */
     @Override
     protected void onClose() {
-
-        //  things to do when closing the view
+        disposeCanvas();
     }
 
 
@@ -1,5 +1,13 @@
 package de.mpicbg.knime.scripting.r.node.snippet;
 
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+
 import de.mpicbg.knime.scripting.core.ScriptingNodeDialog;
 import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
 import de.mpicbg.knime.scripting.r.RColumnSupport;
@@ -37,6 +45,39 @@ public class RSnippetNodeDialog extends ScriptingNodeDialog {
 		super(defaultScript, new RColumnSupport(), useTemplateRepository, useOpenIn, useChunkSettings);
 	}
 
+    /**
+     * configuration dialog with optional streaming settings (single input table only)
+     * 
+     * @param defaultScript
+     * @param useTemplateRepository
+     * @param useOpenIn
+     * @param useChunkSettings
+     * @param useStreamingSettings
+     */
+    public RSnippetNodeDialog(String defaultScript, 
+    		boolean useTemplateRepository, 
+    		boolean useOpenIn,
+    		boolean useChunkSettings,
+    		boolean useStreamingSettings) {
+		this(defaultScript, useTemplateRepository, useOpenIn, useChunkSettings);
+		
+		if(useStreamingSettings) {
+			final SettingsModelBoolean streamingSM = RSnippetNodeModel.createStreamingSM();
+			final SettingsModelIntegerBounded batchSM = RSnippetNodeModel.createStreamingBatchSM();
+			
+			createNewTab("Streaming");
+			streamingSM.addChangeListener(new ChangeListener() {
+				@Override
+				public void stateChanged(ChangeEvent e) {
+					batchSM.setEnabled(streamingSM.getBooleanValue());
+				}
+			});
+			batchSM.setEnabled(streamingSM.getBooleanValue());
+			addDialogComponent(new DialogComponentBoolean(streamingSM, "Process input in row batches (script must treat rows independently)"));
+			addDialogComponent(new DialogComponentNumber(batchSM, "Rows per batch", 1000));
+		}
+	}
+
     /**
      * {@inheritDoc}
      */
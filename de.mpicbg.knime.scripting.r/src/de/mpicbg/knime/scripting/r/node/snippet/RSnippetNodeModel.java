@@ -1,30 +1,66 @@
 package de.mpicbg.knime.scripting.r.node.snippet;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.port.PortObject;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.Rserve.RserveException;
 
 import de.mpicbg.knime.scripting.core.ScriptingModelConfig;
+import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
 import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel;
 import de.mpicbg.knime.scripting.r.RColumnSupport;
+import de.mpicbg.knime.scripting.r.RUtils;
 
 
 /**
  * This is the model implementation of RSnippet.
+ * <p>
+ * Optionally, the input table can be processed in row batches (streaming mode): each batch is pushed to R as 'kIn',
+ * the script is run and 'rOut' is appended to the output. This requires a script which treats rows independently.
+ * The batches are processed within the regular execution; the output spec is taken from the result of the first batch.
+ * </p>
  *
  * @author Holger Brandl, Antje Janosch (MPI-CBG)
  */
 public class RSnippetNodeModel extends AbstractRScriptingNodeModel {
-    
+
     private static final ScriptingModelConfig nodeModelCfg = new ScriptingModelConfig(
     			createPorts(1), 		// 1 input table
     			createPorts(1), 		// 1 output table
-    			new RColumnSupport(), 	
+    			new RColumnSupport(),
     			true, 					// script
     			true,					// provide openIn
     			true);					// use chunks
 
     /**
-     * constructor
+     * MODEL - SETTINGS
+     */
+    public static final String CFG_STREAMING = "streaming.enabled";
+    public static final boolean CFG_STREAMING_DFT = false;
+
+    public static final String CFG_STREAMING_BATCH = "streaming.batch.size";
+    public static final int CFG_STREAMING_BATCH_DFT = 10000;
+
+    /**
+     * constructor (without streaming settings)
      * @param numInputs
      * @param numOutputs
      */
@@ -32,8 +68,35 @@ public class RSnippetNodeModel extends AbstractRScriptingNodeModel {
         super(cfg);
     }
 
+	/**
+	 * constructor for a single input and output table, provides the streaming settings
+	 */
 	public RSnippetNodeModel() {
 		super(nodeModelCfg);
+		this.addModelSetting(CFG_STREAMING, createStreamingSM());
+		this.addModelSetting(CFG_STREAMING_BATCH, createStreamingBatchSM());
+	}
+
+	/**
+	 * @return settings model for streaming mode
+	 */
+	public static SettingsModelBoolean createStreamingSM() {
+		return new SettingsModelBoolean(CFG_STREAMING, CFG_STREAMING_DFT);
+	}
+
+	/**
+	 * @return settings model for the number of rows per batch in streaming mode
+	 */
+	public static SettingsModelIntegerBounded createStreamingBatchSM() {
+		return new SettingsModelIntegerBounded(CFG_STREAMING_BATCH, CFG_STREAMING_BATCH_DFT, 1, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return TRUE, if the node provides the streaming settings and streaming mode is enabled
+	 */
+	private boolean isStreaming() {
+		SettingsModelBoolean streamingSM = (SettingsModelBoolean) getModelSetting(CFG_STREAMING);
+		return streamingSM != null && streamingSM.getBooleanValue();
 	}
 
 	/**
@@ -53,13 +116,151 @@ public class RSnippetNodeModel extends AbstractRScriptingNodeModel {
 	@Override
 	protected PortObject[] executeImpl(PortObject[] inData,
 			ExecutionContext exec) throws Exception {
-		
+
+		if(isStreaming()) {
+			BufferedDataTable inTable = (BufferedDataTable) inData[0];
+			return new PortObject[]{runBatches(inTable, exec)};
+		}
+
 		super.executeImpl(inData, exec);
 		super.runScript(exec);
 		PortObject[] outData = super.pullOutputFromR(exec);
-   
+
         return outData;
     }
-	
-}
 
+	/**
+	 * feeds row batches of the input to the script over one connection and appends each result to the output;
+	 * the output spec is taken from the result of the first batch
+	 * @param inTable
+	 * @param exec
+	 * @return result table
+	 * @throws KnimeScriptingException
+	 * @throws CanceledExecutionException
+	 * @throws InterruptedException
+	 */
+	private BufferedDataTable runBatches(BufferedDataTable inTable, ExecutionContext exec)
+			throws KnimeScriptingException, CanceledExecutionException, InterruptedException {
+
+		int batchSize = ((SettingsModelIntegerBounded) getModelSetting(CFG_STREAMING_BATCH)).getIntValue();
+		int chunkOutSize = ((SettingsModelIntegerBounded) getModelSetting(CHUNK_OUT)).getIntValue();
+		int chunkInSize = getChunkIn(((SettingsModelIntegerBounded) getModelSetting(CHUNK_IN)).getIntValue());
+		DataTableSpec inSpec = inTable.getDataTableSpec();
+		CloseableRowIterator in = inTable.iterator();
+		DataTableSpec outSpec = null;
+		BufferedDataContainer outCon = null;
+
+		m_con = RUtils.createConnection();
+		try {
+			pushFlowVariablesToR(getAvailableFlowVariables(), exec);
+
+			int batchIdx = 0;
+			long numRows = 0;
+			boolean lastBatch = false;
+			while(!lastBatch) {
+				// collect the rows of the next batch
+				BufferedDataContainer batch = exec.createDataContainer(inSpec);
+				Set<RowKey> batchKeys = new HashSet<RowKey>();
+				int n = 0;
+				while(n < batchSize && in.hasNext()) {
+					DataRow row = in.next();
+					batch.addRowToTable(row);
+					batchKeys.add(row.getKey());
+					n++;
+				}
+				batch.close();
+				lastBatch = !in.hasNext();
+				// an empty input is processed once; an empty last batch is skipped
+				if(n == 0 && batchIdx > 0) {
+					exec.clearTable(batch.getTable());
+					break;
+				}
+
+				exec.checkCanceled();
+				numRows += n;
+				exec.setMessage("Batch " + (batchIdx + 1) + " (" + numRows + " rows)");
+
+				pushTableToR(batch.getTable(), R_INVAR_BASE_NAME, exec.createSubProgress(0), chunkInSize);
+				exec.clearTable(batch.getTable());
+				runScript(exec);
+				BufferedDataTable result = pullTableFromR(R_OUTVAR_BASE_NAME, exec.createSubProgress(0), exec, chunkOutSize);
+				if(outSpec == null) {
+					outSpec = result.getDataTableSpec();
+					outCon = exec.createDataContainer(outSpec);
+				}
+
+				// row keys of the input are unique across batches, other keys (e.g. row names of a
+				// data frame created by the script) are made unique by the batch number
+				boolean keepKeys = true;
+				for(DataRow resultRow : result) {
+					if(!batchKeys.contains(resultRow.getKey())) {
+						keepKeys = false;
+						break;
+					}
+				}
+				batchKeys = null;
+
+				for(DataRow resultRow : result)
+					outCon.addRowToTable(adaptRow(resultRow, outSpec, batchIdx, keepKeys));
+				exec.clearTable(result);
+
+				// remove input and output of this batch, flow variables are kept
+				m_con.voidEval("rm(list = intersect(ls(), c(\"" + R_INVAR_BASE_NAME + "\", \"" + R_OUTVAR_BASE_NAME + "\")))");
+				batchIdx ++;
+			}
+			logger.info("streaming: processed " + numRows + " rows in " + batchIdx + " batch(es)");
+
+			outCon.close();
+			return outCon.getTable();
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Streaming mode: failed to process batch:\n" + e.getMessage());
+		} finally {
+			in.close();
+			closeRConnection();
+		}
+	}
+
+	/**
+	 * makes sure a result row of a batch fits to the output spec; integer results are converted
+	 * if a double column is expected, columns with only missing values are accepted for any type
+	 * @param row
+	 * @param outSpec
+	 * @param batchIdx
+	 * @param keepKey	if false, the row key is prefixed with the batch number
+	 * @return
+	 * @throws KnimeScriptingException
+	 */
+	private DataRow adaptRow(DataRow row, DataTableSpec outSpec, int batchIdx, boolean keepKey) throws KnimeScriptingException {
+		if(row.getNumCells() != outSpec.getNumColumns())
+			throw new KnimeScriptingException("Streaming mode: batch " + (batchIdx + 1) + " returned " + row.getNumCells()
+					+ " columns instead of " + outSpec.getNumColumns() + ". The script needs to treat rows independently.");
+
+		List<DataCell> cells = null;
+		for(int i = 0; i < row.getNumCells(); i++) {
+			DataCell cell = row.getCell(i);
+			if(cell.isMissing() || outSpec.getColumnSpec(i).getType().isASuperTypeOf(cell.getType()))
+				continue;
+
+			if(cells == null) {
+				cells = new ArrayList<DataCell>(row.getNumCells());
+				for(int j = 0; j < row.getNumCells(); j++)
+					cells.add(row.getCell(j));
+			}
+			if(outSpec.getColumnSpec(i).getType().equals(DoubleCell.TYPE) && cell.getType().isCompatible(DoubleValue.class))
+				cells.set(i, new DoubleCell(((DoubleValue) cell).getDoubleValue()));
+			else
+				throw new KnimeScriptingException("Streaming mode: batch " + (batchIdx + 1) + " returned type " + cell.getType()
+						+ " for column '" + outSpec.getColumnSpec(i).getName() + "' instead of " + outSpec.getColumnSpec(i).getType());
+		}
+		if(keepKey && cells == null)
+			return row;
+
+		if(cells == null) {
+			cells = new ArrayList<DataCell>(row.getNumCells());
+			for(int j = 0; j < row.getNumCells(); j++)
+				cells.add(row.getCell(j));
+		}
+		RowKey key = keepKey ? row.getKey() : new RowKey("Batch" + (batchIdx + 1) + "_" + row.getKey().getString());
+		return new DefaultRow(key, cells);
+	}
+}
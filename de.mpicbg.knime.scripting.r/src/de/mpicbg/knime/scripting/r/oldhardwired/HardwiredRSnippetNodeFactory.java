@@ -65,6 +65,12 @@ public abstract class HardwiredRSnippetNodeFactory extends RSnippetNodeFactory i
     }
 
 
+    @Override
+    protected boolean useStreamingSettings() {
+        return false;
+    }
+
+
     protected boolean enableTemplateRepository() {
         return false;
     }
@@ -7,7 +7,6 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.nio.file.Files;
@@ -34,6 +33,7 @@ import org.knime.core.node.port.image.ImagePortObjectSpec;
 import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPMismatchException;
 import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RFileInputStream;
 import org.rosuda.REngine.Rserve.RserveException;
 
 import de.mpicbg.knime.scripting.core.AbstractScriptingNodeModel;
@@ -56,7 +56,8 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 	
 	protected static final ImagePortObjectSpec IM_PORT_SPEC = new ImagePortObjectSpec(PNGImageContent.TYPE);
 
-    public BufferedImage m_image;						// image created by R
+    public BufferedImage m_image;						// image created by R (decoded on demand, see getImage())
+    private byte[] m_imageBytes;				// image file content created by R (format of the image device)
     public File m_nodeImageFile;				// image file (internals)
     protected File m_rWorkspaceFile;			// workspace file (internals)
     private boolean isImageIcon = false;
@@ -125,13 +126,12 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 			
 			// create image for image port
 			if(pType.equals(ImagePortObject.TYPE)) {
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				PNGImageContent content;
 				try {
-					ImageIO.write(m_image, "png", baos);
+					content = new PNGImageContent(getPNGBytes());
 				} catch (IOException e) {
 					throw new KnimeScriptingException(e.getMessage());
 				}
-				PNGImageContent content = new PNGImageContent(baos.toByteArray());
 		        
 		        outPorts[i] = new ImagePortObject(content, IM_PORT_SPEC);
 			}
@@ -149,7 +149,7 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
         // no need to save image to file ?
         if(!enableFileOutput) return;
         
-        assert m_image != null;
+        assert m_imageBytes != null || m_image != null;
         
         String fileName = ((SettingsModelString) getModelSetting(CFG_OUTFILE)).getStringValue();
         boolean overwriteFileOutput = ((SettingsModelBoolean) getModelSetting(CFG_OVERWRITE)).getBooleanValue();
@@ -174,11 +174,8 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
         		}
         	}
 
-        	FileOutputStream fsOut = null;
         	try {
-	            fsOut = new FileOutputStream(new File(fileName));
-	            ImageIO.write(m_image, "png", fsOut);
-	            fsOut.close();
+	            Files.write(imageFile.toPath(), getPNGBytes());
         	} catch (IOException e) {
         		throw new KnimeScriptingException("Failed to sava image to file:\n" + e.getMessage());
         	}
@@ -249,9 +246,23 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
     		throw new KnimeScriptingException(e.getMessage());
     	}
 
-        // create the image the script
+        // create the image the script (decoded if a view needs it)
         String script = prepareScript();
-        m_image = createImage(connection, script, getDefWidth(), getDefHeight(), getDevice());
+        m_imageBytes = createImageBytes(connection, script, getDefWidth(), getDefHeight(), getDevice());
+        m_image = null;
+    }
+
+    /**
+     * @return image as PNG, the bytes created by R are used as they are if the image device is png
+     * @throws IOException
+     */
+    protected byte[] getPNGBytes() throws IOException {
+    	if(m_imageBytes != null && getDevice().equals("png"))
+    		return m_imageBytes;
+
+    	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    	ImageIO.write(getImage(), "png", baos);
+    	return baos.toByteArray();
     }
     
     /**
@@ -268,6 +279,33 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
     public static BufferedImage createImage(RConnection connection, String script, int width, int height, String device) 
 			throws KnimeScriptingException {
 
+		byte[] image = createImageBytes(connection, script, width, height, device);
+
+		// create image object from bytes
+		BufferedImage img = null;
+		try {
+			img = ImageIO.read(new ByteArrayInputStream(image));
+		} catch (IOException e) {
+			throw new KnimeScriptingException(e.getMessage());
+		}
+
+		return img;
+	}
+
+    /**
+     * run R script to save the plot as a temporary file and stream the file content back (no size limit)
+     * note: connection is not closed when exceptions occur
+     * @param connection
+     * @param script
+     * @param width
+     * @param height
+     * @param device
+     * @return content of the image file in the format of the device
+     * @throws KnimeScriptingException
+     */
+    public static byte[] createImageBytes(RConnection connection, String script, int width, int height, String device) 
+			throws KnimeScriptingException {
+
 		// check preferences
 		boolean useEvaluate = R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.USE_EVALUATE_PACKAGE);
 
@@ -314,34 +352,35 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
         }
 
 		// close the image
-		byte[] image = null;
+		String imageFile = null;
 		try {
 			connection.eval("dev.off();");
 			// check if the plot file has been written
 			int xpInt = connection.eval("file.access('" + tempFileName + "',0)").asInteger();
 			if(xpInt == -1) throw new KnimeScriptingException("Plot could not be created. Please check your script");
-	
-			// we limit the file size to 1MB which should be sufficient and we delete the file as well
-			xp = connection.eval("try({ binImage <- readBin('" + tempFileName + "','raw',2024*2024); unlink('" + tempFileName + "'); binImage })");
-	
-			if (xp.inherits("try-error")) { // if the result is of the class try-error then there was a problem
-				throw new KnimeScriptingException(xp.asString());
-			}			
-			image = xp.asBytes();
-	
+			imageFile = connection.eval("normalizePath('" + tempFileName + "')").asString();
 		} catch (RserveException | REXPMismatchException e) {
 			throw new KnimeScriptingException("Failed to close image device and to read in plot as binary:+\n" + e.getMessage());
 		}
-		
-		// create image object from bytes
-		BufferedImage img = null;
-		try {
-			img = ImageIO.read(new ByteArrayInputStream(image));
+
+		// stream the image file from R and delete it
+		ByteArrayOutputStream image = new ByteArrayOutputStream();
+		try (RFileInputStream is = connection.openFile(imageFile)) {
+			byte[] buf = new byte[64 * 1024];
+			int len;
+			while((len = is.read(buf)) > 0)
+				image.write(buf, 0, len);
 		} catch (IOException e) {
-			throw new KnimeScriptingException(e.getMessage());
+			throw new KnimeScriptingException("Failed to read in plot as binary:\n" + e.getMessage());
+		} finally {
+			try {
+				connection.voidEval("unlink('" + tempFileName + "')");
+			} catch (RserveException e) {
+				// the R session will clean up its working directory
+			}
 		}
 
-		return img;
+		return image.toByteArray();
 	}
 
     /**
@@ -451,6 +490,9 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 
     public BufferedImage getImage() {
         try {
+            if (m_image == null && m_imageBytes != null) {
+                m_image = ImageIO.read(new ByteArrayInputStream(m_imageBytes));
+            }
             if (m_image == null && m_nodeImageFile != null && m_nodeImageFile.isFile()) {
                 logger.warn("Restoring image from disk. This might take a few seconds...");
                 deserializeImage();
@@ -476,10 +518,10 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
             Files.copy(m_rWorkspaceFile.toPath(), f.toPath());
         }
 
-        if (m_image != null) {
+        if (m_imageBytes != null || m_image != null) {
             File imageFile = new File(nodeDir, "image.png");
             
-            ImageIO.write(m_image, "png", imageFile);
+            Files.write(imageFile.toPath(), getPNGBytes());
         }
     }
 
@@ -514,6 +556,7 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 	protected void reset() {
 		super.reset();
 		m_image = null;
+		m_imageBytes = null;
 	}
 
 	@Override
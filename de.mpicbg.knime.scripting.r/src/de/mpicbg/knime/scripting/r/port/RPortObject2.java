@@ -3,10 +3,10 @@ package de.mpicbg.knime.scripting.r.port;
 import java.awt.BorderLayout;
 import java.awt.Font;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
@@ -19,7 +19,8 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.knime.core.node.port.PortTypeRegistry;
-import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.RList;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
 
@@ -30,69 +31,148 @@ public class RPortObject2 implements PortObject {
 	
     public static final PortType TYPE = PortTypeRegistry.getInstance().getPortType(RPortObject2.class);
 	
-	private final File m_WorkspaceFile;
+	/** R command to list names, classes and sizes (bytes) of all objects of the workspace */
+	private static final String CATALOGUE_CMD = "local({ objs <- ls(.GlobalEnv); "
+			+ "list(objs, "
+			+ "vapply(objs, function(o) class(get(o, envir = .GlobalEnv))[1], character(1), USE.NAMES = FALSE), "
+			+ "vapply(objs, function(o) as.numeric(object.size(get(o, envir = .GlobalEnv))), numeric(1), USE.NAMES = FALSE)) })";
+
+	/** R command to capture the structure of all objects of the workspace (does not create objects) */
+	private static final String STRUCTURE_CMD = "local({ objs <- setdiff(ls(.GlobalEnv), c(\"tempfile\", \"tmpwfile\")); "
+			+ "unlist(lapply(objs, function(o) capture.output(print(o), str(get(o, envir = .GlobalEnv))))) })";
+
+	/** maximum time (ms) to wait for the R session while another node works with it */
+	private static final long SESSION_TIMEOUT = 5 * 60 * 1000;
+	
+	/** local workspace file, null as long as the workspace is only available on the R server (session affinity) */
+	private File m_WorkspaceFile;
 	private HashMap<String, String> m_rObjects;
+	private HashMap<String, Long> m_rObjectSizes;
+
+	/** detached R session holding the workspace (session affinity), null if not available */
+	private RSharedSession m_shared = null;
+	/** workspace file on server side, saved before the session was handed over to a downstream node (remote hosts) */
+	private String m_serverFile = null;
+	/** serializes writing the local workspace file */
+	private final Object m_fileLock = new Object();
 
+	/**
+	 * creates the port object from a workspace file without catalogue of its objects
+	 * (loads the workspace in R to retrieve it)
+	 * @param workspaceFile
+	 */
 	public RPortObject2(File workspaceFile) {
 		this.m_WorkspaceFile = workspaceFile;
-		this.m_rObjects = getRObjects();
+		loadRObjects();
 	}
 
 	public RPortObject2(RConnection connection, File workspaceFile) {
 		this.m_WorkspaceFile = workspaceFile;
-		this.m_rObjects = getRObjects(connection);
+		loadRObjects(connection);
+	}
+
+	/**
+	 * creates the port object from the workspace of an R session which is kept alive for a downstream node
+	 * (session affinity); the connection is detached and must not be used anymore
+	 * @param connection
+	 * @throws KnimeScriptingException	if the session could not be detached
+	 */
+	public RPortObject2(RConnection connection) throws KnimeScriptingException {
+		this.m_WorkspaceFile = null;
+		loadRObjects(connection);
+		try {
+			m_shared = new RSharedSession(connection, this);
+		} catch (RserveException e) {
+			throw new KnimeScriptingException("Failed to detach R session: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * creates the port object from the workspace of an R session which was taken from an upstream port object
+	 * (see {@link #takeSession()}); the session is given back and kept for a downstream node
+	 * @param connection
+	 * @param sessionSource	port object the session was taken from
+	 */
+	public RPortObject2(RConnection connection, RPortObject2 sessionSource) {
+		this.m_WorkspaceFile = null;
+		loadRObjects(connection);
+		m_shared = sessionSource.m_shared;
+		m_shared.release(connection, this);
+	}
+
+	/**
+	 * creates the port object from a workspace file and the catalogue of its objects (no R involved)
+	 * @param workspaceFile
+	 * @param rObjects		names of the R objects and their class
+	 * @param rObjectSizes	names of the R objects and their size in bytes
+	 */
+	public RPortObject2(File workspaceFile, HashMap<String, String> rObjects, HashMap<String, Long> rObjectSizes) {
+		this.m_WorkspaceFile = workspaceFile;
+		this.m_rObjects = rObjects;
+		this.m_rObjectSizes = rObjectSizes;
 	}
 
 	@Override
 	public RPortObjectSpec2 getSpec() {
-		final RPortObjectSpec2 spec = new RPortObjectSpec2(m_rObjects);
+		final RPortObjectSpec2 spec = new RPortObjectSpec2(m_rObjects, m_rObjectSizes);
 		return spec;
 	}
+
+	/**
+	 * @return a hash map with the names of R objects and their class
+	 */
+	public HashMap<String, String> getRObjects() {
+		return m_rObjects;
+	}
+
+	/**
+	 * @return a hash map with the names of R objects and their size in bytes
+	 */
+	public HashMap<String, Long> getRObjectSizes() {
+		return m_rObjectSizes;
+	}
 	
 	/**
-	 * retrieve all R objects and their type from an existing connection
+	 * retrieve all R objects, their class and size from an existing connection (single R call)
 	 * @param connection
-	 * @return hashmap containing the names of all R-objects and their class
-	 * @throws RserveException 
 	 */
-	private HashMap<String, String> getRObjects(RConnection connection) {
-		HashMap<String, String> rObjects = new HashMap<String, String>();
+	private void loadRObjects(RConnection connection) {
+		m_rObjects = new HashMap<String, String>();
+		m_rObjectSizes = new HashMap<String, Long>();
 
 		try {
-			REXPString objTypes = (REXPString) connection.eval("sapply(mget(ls(), .GlobalEnv), class)");
-			REXPString objNames = (REXPString) objTypes.getAttribute("names");
+			RList catalogue = connection.eval(CATALOGUE_CMD).asList();
 
-			String[] types = objTypes.asStrings();
-			String[] names = objNames.asStrings();
+			String[] names = catalogue.at(0).asStrings();
+			String[] types = catalogue.at(1).asStrings();
+			double[] sizes = catalogue.at(2).asDoubles();
 
-			for(int i = 0; i < objTypes.length(); i++) {
-				rObjects.put(names[i], types[i]);
+			for(int i = 0; i < names.length; i++) {
+				m_rObjects.put(names[i], types[i]);
+				m_rObjectSizes.put(names[i], (long) sizes[i]);
 			}
-		} catch (RserveException e) {
+		} catch (RserveException | REXPMismatchException e) {
 			e.printStackTrace();
 		} 
-
-		return rObjects;
 	}
 
 	/**
-	 * retrieve all R objects and their type by loading the workspace file (new connection)
-	 * @return hashmap containing the names of all R-objects and their class
+	 * retrieve all R objects, their class and size by loading the workspace file (new connection)
 	 */
-	private HashMap<String, String> getRObjects() {
+	private void loadRObjects() {
 		
 		RConnection connection = null;
-		HashMap<String, String> rObjects = null;
 		try {
 			connection = RUtils.createConnection();	
 			RUtils.loadWorkspace(m_WorkspaceFile, connection);
-			rObjects = getRObjects(connection);
+			loadRObjects(connection);
 		} catch (KnimeScriptingException e) {
+			m_rObjects = new HashMap<String, String>();
+			m_rObjectSizes = new HashMap<String, Long>();
 			e.printStackTrace();
 		}
 		
-		if(connection != null) connection.close();
-		return rObjects;
+		RUtils.releaseConnection(connection);
 	}
 
 	@Override
@@ -115,57 +195,277 @@ public class RPortObject2 implements PortObject {
         DefaultCaret caret = (DefaultCaret)jep.getCaret();
         caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
         jep.setEditable(false);
-
-        RConnection connection ;
-		try {
-			connection = RUtils.createConnection();
-		} catch (KnimeScriptingException e) {
-			jep.setText(e.getMessage());
-			panel.add(new JScrollPane(jep));	        
-			e.printStackTrace();
-			return new JComponent[]{panel};
-		}
         jep.setFont(new Font("Monospaced", Font.PLAIN, 14));
 
         try {
-            RUtils.loadWorkspace(m_WorkspaceFile, connection);
-                        
-            // to get structure information about the output object, one needs to use capture the output
-            // str(...) does not provide any return value
-            connection.voidEval("tempfile <- tempfile(pattern = 'structure_', fileext = '.txt')");
-            List<String> objects = Arrays.asList(connection.eval("ls()").asStrings());
-            for(String obj : objects) {
-            	// exclude files which where created temporary TODO: it is too dependent on how temporary file variables are named... other solution?
-            	if(!(obj.equals("tempfile") || obj.equals("tmpwfile")))
-            		connection.voidEval("capture.output(print(\"" + obj + "\"), str(" + obj + "), file = tempfile, append = TRUE)");
-            }         
-            
-            String[] structure = connection.eval("readLines(tempfile)").asStrings();
-            connection.voidEval("unlink(tempfile)");
-              
-            String summary = StringUtils.join(structure, '\n');
-            
-            jep.setText(summary);
-
+            String[] structure = getStructure();
+            jep.setText(StringUtils.join(structure, '\n'));
+        } catch (KnimeScriptingException e) {
+            jep.setText(e.getMessage());
+            e.printStackTrace();
         } catch (Exception e) {
             jep.setText("Failed to retrieve the structure of R objects from port file " + getFilePath());
         }
-        
-        connection.close();
 
         panel.add(new JScrollPane(jep));
         return new JComponent[]{panel};
 	}
 
+	/**
+	 * retrieves the structure of all R objects; does not wait for an R session which is used by another node
+	 * (called from the event dispatch thread)
+	 * @return output of str() for each object
+	 * @throws Exception
+	 */
+	private String[] getStructure() throws Exception {
+		File workspaceFile;
+		String serverFile;
+		RSharedSession shared;
+		synchronized (this) {
+			workspaceFile = m_WorkspaceFile;
+			serverFile = m_serverFile;
+			shared = m_shared;
+		}
+
+		// workspace only available in the R session: inspect it there
+		if(workspaceFile == null && serverFile == null) {
+			RConnection connection = null;
+			try {
+				if(shared != null)
+					connection = shared.acquire(this, false, 0);
+			} catch (TimeoutException e) {
+				throw new KnimeScriptingException("The R session holding the workspace is used by a downstream node. "
+						+ "Please open the view again once the node finished.");
+			}
+			if(connection == null)
+				throw new KnimeScriptingException("The R session holding the workspace is not available anymore. Please re-execute the upstream node.");
+			try {
+				return connection.eval(STRUCTURE_CMD).asStrings();
+			} finally {
+				shared.release(connection, null);
+			}
+		}
+
+		RConnection connection = RUtils.createConnection();
+		try {
+			if(workspaceFile != null)
+				RUtils.loadWorkspace(workspaceFile, connection);
+			else
+				connection.voidEval("load(\"" + serverFile.replace("\\", "\\\\") + "\")");
+			return connection.eval(STRUCTURE_CMD).asStrings();
+		} finally {
+			RUtils.releaseConnection(connection);
+		}
+	}
+
 	private String getFilePath() {
-		assert m_WorkspaceFile != null;
-		return m_WorkspaceFile.getAbsolutePath();
+		return m_WorkspaceFile != null ? m_WorkspaceFile.getAbsolutePath() : "(R session)";
 	}
 
-	public File getFile() {
-		return m_WorkspaceFile;
+	/**
+	 * @return local workspace file; written on first access if the workspace is only available on the R server
+	 * (waits at most {@link #SESSION_TIMEOUT} ms for an R session which is used by another node)
+	 * @throws IOException	if the workspace could not be retrieved from R
+	 */
+	public File getFile() throws IOException {
+		synchronized (m_fileLock) {
+			RSharedSession shared;
+			String serverFile;
+			synchronized (this) {
+				if(m_WorkspaceFile != null)
+					return m_WorkspaceFile;
+				shared = m_shared;
+				serverFile = m_serverFile;
+			}
+
+			File workspaceFile = File.createTempFile("genericR", ".RData");
+			try {
+				if(serverFile != null)
+					downloadWorkspace(serverFile, workspaceFile);
+				else
+					saveWorkspace(shared, workspaceFile);
+			} catch (IOException e) {
+				workspaceFile.delete();
+				throw e;
+			}
+
+			synchronized (this) {
+				// saved before the session was handed over in the meantime
+				if(m_WorkspaceFile != null) {
+					workspaceFile.delete();
+					return m_WorkspaceFile;
+				}
+				m_WorkspaceFile = workspaceFile;
+				m_serverFile = null;
+				return m_WorkspaceFile;
+			}
+		}
 	}
 
+	/**
+	 * copies the workspace saved on server side before the session was handed over (does not need the session)
+	 * @param serverFile
+	 * @param workspaceFile
+	 * @throws IOException
+	 */
+	private void downloadWorkspace(String serverFile, File workspaceFile) throws IOException {
+		RConnection connection = null;
+		try {
+			connection = RUtils.createConnection();
+			RUtils.downloadWorkspaceFile(serverFile, workspaceFile, connection, null);
+		} catch (KnimeScriptingException e) {
+			throw new IOException("Failed to retrieve the workspace from R: " + e.getMessage(), e);
+		} finally {
+			RUtils.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * saves the workspace from the R session
+	 * @param shared
+	 * @param workspaceFile
+	 * @throws IOException
+	 */
+	private void saveWorkspace(RSharedSession shared, File workspaceFile) throws IOException {
+		RConnection connection = null;
+		try {
+			if(shared != null)
+				connection = shared.acquire(this, false, SESSION_TIMEOUT);
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while waiting for the R session", e);
+		} catch (TimeoutException e) {
+			throw new IOException("The R session holding the workspace is used by another node for more than " 
+					+ (SESSION_TIMEOUT / 1000) + " s. Please re-execute the upstream node.", e);
+		}
+		if(connection == null)
+			throw new IOException("The R session holding the workspace is not available anymore. Please re-execute the upstream node.");
 
+		try {
+			RUtils.saveWorkspaceToFile(workspaceFile, connection, RUtils.getHost());
+		} catch (KnimeScriptingException e) {
+			throw new IOException("Failed to retrieve the workspace from R: " + e.getMessage(), e);
+		} finally {
+			shared.release(connection, null);
+		}
+	}
+
+	/**
+	 * @return TRUE, if the workspace is only available in an R session (no local workspace file yet)
+	 */
+	public synchronized boolean isSessionOnly() {
+		return m_WorkspaceFile == null;
+	}
+
+	/**
+	 * hands the R session holding the workspace over to a downstream node (session affinity); the workspace
+	 * is kept as snapshot within the session, in case the port object is needed again, and saved to a file 
+	 * (on server side for remote hosts), so {@link #getFile()} does not need the session while the node works with it.
+	 * Give the connection back by {@link #releaseSession(RConnection)} or
+	 * {@link #RPortObject2(RConnection, RPortObject2)}.
+	 * @return attached connection with the workspace loaded or null if there is no R session or it is used by
+	 * another node (does not wait)
+	 * @throws KnimeScriptingException
+	 */
+	public RConnection takeSession() throws KnimeScriptingException {
+		RSharedSession shared;
+		synchronized (this) {
+			shared = m_shared;
+		}
+		if(shared == null)
+			return null;
+
+		RConnection connection;
+		try {
+			connection = shared.acquire(this, true, 0);
+		} catch (InterruptedException e) {
+			throw new KnimeScriptingException("Interrupted while waiting for the R session");
+		} catch (TimeoutException e) {
+			// another branch works with the session, the workspace is transferred by file
+			return null;
+		}
+		if(connection == null)
+			return null;
+
+		try {
+			saveBeforeHandover(connection);
+		} catch (KnimeScriptingException e) {
+			shared.release(connection, null);
+			throw e;
+		}
+		return connection;
+	}
+
+	/**
+	 * saves the workspace unless a file is available already
+	 * @param connection	attached session with the workspace of this port object
+	 * @throws KnimeScriptingException
+	 */
+	private void saveBeforeHandover(RConnection connection) throws KnimeScriptingException {
+		synchronized (this) {
+			if(m_WorkspaceFile != null || m_serverFile != null)
+				return;
+		}
+
+		String host = RUtils.getHost();
+		if(RUtils.isLocalHost(host)) {
+			File workspaceFile;
+			try {
+				workspaceFile = File.createTempFile("genericR", ".RData");
+			} catch (IOException e) {
+				throw new KnimeScriptingException("Failed to create workspace file: " + e.getMessage());
+			}
+			RUtils.saveWorkspaceToFile(workspaceFile, connection, host);
+			synchronized (this) {
+				m_WorkspaceFile = workspaceFile;
+			}
+		} else {
+			String serverFile = RUtils.saveWorkspaceOnServer(connection);
+			synchronized (this) {
+				m_serverFile = serverFile;
+			}
+		}
+	}
+
+	/**
+	 * gives a connection taken by {@link #takeSession()} back
+	 * @param connection
+	 */
+	public void releaseSession(RConnection connection) {
+		m_shared.release(connection, null);
+	}
+
+	/**
+	 * removes the workspace from the R session; the session is closed if no other port object uses it
+	 * (if a downstream node works with the session, this is done once the node gave it back)
+	 */
+	public void discardSession() {
+		RSharedSession shared;
+		String serverFile;
+		synchronized (this) {
+			shared = m_shared;
+			serverFile = m_serverFile;
+			m_shared = null;
+			m_serverFile = null;
+		}
+		if(shared != null)
+			shared.discard(this);
+		if(serverFile != null)
+			deleteServerFile(serverFile);
+	}
+
+	/**
+	 * deletes a workspace file on server side (failures are ignored)
+	 * @param serverFile
+	 */
+	private static void deleteServerFile(String serverFile) {
+		RConnection connection = null;
+		try {
+			connection = RUtils.createConnection();
+			connection.voidEval("unlink(\"" + serverFile.replace("\\", "\\\\") + "\")");
+		} catch (KnimeScriptingException | RserveException e) {
+			// the R server cleans up its temporary directory
+		}
+		RUtils.releaseConnection(connection);
+	}
 
 }
@@ -1,9 +1,19 @@
 package de.mpicbg.knime.scripting.r.port;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 import org.knime.core.node.CanceledExecutionException;
@@ -13,20 +23,72 @@ import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortObjectZipInputStream;
 import org.knime.core.node.port.PortObjectZipOutputStream;
 
+import de.mpicbg.knime.scripting.r.RUtils;
+
 public final class RPortObjectSerializer2 extends PortObjectSerializer<RPortObject2> {
 	
 	private static final String ZIP_ENTRY_WS = "Rworkspace.RData";
+	/** names, classes and sizes of the R objects (allows to restore the port object without R) */
+	private static final String ZIP_ENTRY_CATALOGUE = "Rcatalogue.dat";
+	/** compression of the workspace file (missing for port objects saved by former versions, which are gzipped) */
+	private static final String ZIP_ENTRY_FORMAT = "Rworkspace.format";
+
+	/** workspace compressions which can be loaded by R */
+	private static final List<String> KNOWN_FORMATS = Arrays.asList(RUtils.COMPRESSION_NONE, "gzip", "bzip2", "xz");
 
 	@Override
 	public void savePortObject(RPortObject2 portObject, PortObjectZipOutputStream out, ExecutionMonitor exec)
 			throws IOException, CanceledExecutionException {
-		out.putNextEntry(new ZipEntry(ZIP_ENTRY_WS));
-		Files.copy(portObject.getFile().toPath(), out);
+		File wsFile = portObject.getFile();
+		String format = RUtils.getCompression(wsFile);
+
+		out.putNextEntry(createWorkspaceEntry(wsFile, format));
+		Files.copy(wsFile.toPath(), out);
 		out.flush();
 		out.closeEntry();
+
+		out.putNextEntry(new ZipEntry(ZIP_ENTRY_FORMAT));
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeUTF(format);
+		dos.flush();
+		out.closeEntry();
+
+		out.putNextEntry(new ZipEntry(ZIP_ENTRY_CATALOGUE));
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(portObject.getRObjects());
+		oos.writeObject(portObject.getRObjectSizes());
+		oos.flush();
+		out.closeEntry();
 		out.close();
 	}
 
+	/**
+	 * compressed workspace files are stored as they are, compressing them again costs time without gain
+	 * @param wsFile
+	 * @param format	see {@link RUtils#getCompression(File)}
+	 * @return zip entry for the workspace file
+	 * @throws IOException
+	 */
+	private ZipEntry createWorkspaceEntry(File wsFile, String format) throws IOException {
+		ZipEntry entry = new ZipEntry(ZIP_ENTRY_WS);
+		if(format.equals(RUtils.COMPRESSION_NONE))
+			return entry;
+
+		// stored entries need size and checksum in advance
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[1024 * 1024];
+		try (InputStream is = new FileInputStream(wsFile)) {
+			int len;
+			while((len = is.read(buf)) > 0)
+				crc.update(buf, 0, len);
+		}
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(wsFile.length());
+		entry.setCompressedSize(wsFile.length());
+		entry.setCrc(crc.getValue());
+		return entry;
+	}
+
 	@Override
 	public RPortObject2 loadPortObject(PortObjectZipInputStream in, PortObjectSpec spec, ExecutionMonitor exec)
 			throws IOException, CanceledExecutionException {
@@ -38,7 +100,37 @@ public final class RPortObjectSerializer2 extends PortObjectSerializer<RPortObje
 		File tempFile = File.createTempFile("genericR", ".RData");
 		Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		
+		HashMap<String, String> rObjects = null;
+		HashMap<String, Long> rObjectSizes = null;
+		try {
+			while((nextEntry = in.getNextEntry()) != null) {
+				if(nextEntry.getName().equals(ZIP_ENTRY_FORMAT)) {
+					String format = new DataInputStream(in).readUTF();
+					if(!KNOWN_FORMATS.contains(format))
+						throw new IOException("Unsupported R workspace format '" + format + "'");
+				} else if(nextEntry.getName().equals(ZIP_ENTRY_CATALOGUE)) {
+					ObjectInputStream ois = new ObjectInputStream(in);
+					@SuppressWarnings("unchecked")
+					HashMap<String, String> objects = (HashMap<String, String>) ois.readObject();
+					@SuppressWarnings("unchecked")
+					HashMap<String, Long> sizes = (HashMap<String, Long>) ois.readObject();
+					rObjects = objects;
+					rObjectSizes = sizes;
+				}
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e.getMessage(), e);
+		}
 		in.close();
+
+		if(rObjects != null)
+			return new RPortObject2(tempFile, rObjects, rObjectSizes);
+
+		// port objects saved by former versions: use the catalogue of the spec if available, load the workspace in R otherwise
+		if(spec instanceof RPortObjectSpec2 && !((RPortObjectSpec2) spec).getRObjects().isEmpty()) {
+			RPortObjectSpec2 rSpec = (RPortObjectSpec2) spec;
+			return new RPortObject2(tempFile, rSpec.getRObjects(), rSpec.getRObjectSizes());
+		}
 		return new RPortObject2(tempFile);
 	}
 
@@ -22,21 +22,36 @@ public class RPortObjectSpec2 implements PortObjectSpec {
 	
 	public static final RPortObjectSpec2 INSTANCE = new RPortObjectSpec2();
 
+	private static final String ZIP_ENTRY_OBJECTS = "content.dat";
+	private static final String ZIP_ENTRY_SIZES = "sizes.dat";
+
 	/** names of all R objects provided by the R workspace and their R-type */
 	private HashMap<String, String> m_rObjects;
 
+	/** names of all R objects provided by the R workspace and their size in bytes (object.size) */
+	private HashMap<String, Long> m_rObjectSizes;
+
 	/**
 	 * @param rObjects
 	 */
 	public RPortObjectSpec2(HashMap<String, String> rObjects) {
+		this(rObjects, new HashMap<String, Long>());
+	}
+
+	/**
+	 * @param rObjects
+	 * @param rObjectSizes
+	 */
+	public RPortObjectSpec2(HashMap<String, String> rObjects, HashMap<String, Long> rObjectSizes) {
 		this.m_rObjects = rObjects;
+		this.m_rObjectSizes = rObjectSizes;
 	}
 
 	/**
 	 * constructor
 	 */
 	public RPortObjectSpec2() {
-		this.m_rObjects = new HashMap<String, String>();
+		this(new HashMap<String, String>());
 	}
 
 	/**
@@ -54,6 +69,14 @@ public class RPortObjectSpec2 implements PortObjectSpec {
 	protected HashMap<String, String> getRObjects() {
 		return m_rObjects;
 	}
+
+	/**
+	 * @return a hash map with the names of R objects and their size in bytes
+	 * (empty for specs saved by former versions)
+	 */
+	protected HashMap<String, Long> getRObjectSizes() {
+		return m_rObjectSizes;
+	}
 	
 	public static final class SpecSerializer extends PortObjectSpecSerializer<RPortObjectSpec2> {
 
@@ -63,10 +86,18 @@ public class RPortObjectSpec2 implements PortObjectSpec {
 		@Override
 		public void savePortObjectSpec(RPortObjectSpec2 portObjectSpec, PortObjectSpecZipOutputStream out)
 				throws IOException {
-			out.putNextEntry(new ZipEntry("content.dat"));
-            new ObjectOutputStream(out).writeObject(portObjectSpec
-                    .getRObjects());
-			
+			out.putNextEntry(new ZipEntry(ZIP_ENTRY_OBJECTS));
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(portObjectSpec.getRObjects());
+            oos.flush();
+            out.closeEntry();
+
+			out.putNextEntry(new ZipEntry(ZIP_ENTRY_SIZES));
+            oos = new ObjectOutputStream(out);
+            oos.writeObject(portObjectSpec.getRObjectSizes());
+            oos.flush();
+            out.closeEntry();
+
 		}
 
 		/**
@@ -79,7 +110,16 @@ public class RPortObjectSpec2 implements PortObjectSpec {
             try {
                 @SuppressWarnings("unchecked")
 				final HashMap<String,String> rObjects = (HashMap<String,String>)ois.readObject();
-                return new RPortObjectSpec2(rObjects);
+
+                // sizes are not available for specs saved by former versions
+                HashMap<String,Long> rObjectSizes = new HashMap<String, Long>();
+                ZipEntry sizesEntry = in.getNextEntry();
+                if(sizesEntry != null && sizesEntry.getName().equals(ZIP_ENTRY_SIZES)) {
+                	@SuppressWarnings("unchecked")
+                	final HashMap<String,Long> sizes = (HashMap<String,Long>)new ObjectInputStream(in).readObject();
+                	rObjectSizes = sizes;
+                }
+                return new RPortObjectSpec2(rObjects, rObjectSizes);
             } catch (final ClassNotFoundException e) {
                 throw new IOException(e.getMessage(), e.getCause());
             }
@@ -0,0 +1,214 @@
+package de.mpicbg.knime.scripting.r.port;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RSession;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * <p>
+ * detached R session shared by the generic outputs of a chain of nodes (session affinity). The workspace of one
+ * port object is held in the global environment (live); the workspaces of the others are kept as snapshots in an
+ * environment on the search path, which are not part of saved workspaces. A snapshot is a list of the objects of
+ * the global environment, R copies them only when they are modified, so taking and restoring a snapshot is cheap.
+ * </p>
+ * <p>
+ * While a node works with the session it is attached (busy); other port objects wait until it is given back
+ * (bounded by a timeout). The session is closed when the last port object using it is discarded.
+ * </p>
+ */
+class RSharedSession {
+
+	/** name of the environment (on the search path) holding the workspace snapshots */
+	private static final String SNAPSHOT_ENV = "knime:workspaces";
+
+	/** detached session, null while attached or after the session was closed */
+	private RSession m_session;
+	/** TRUE, while a node works with the session */
+	private boolean m_busy = false;
+	/** TRUE, if the session is not available anymore */
+	private boolean m_closed = false;
+
+	/** port object whose workspace is held in the global environment, null if none */
+	private RPortObject2 m_live;
+	/** port objects using the session and the names of their snapshots */
+	private final Map<RPortObject2, String> m_users = new HashMap<RPortObject2, String>();
+	/** number of port objects which joined the session */
+	private int m_numJoined = 0;
+	/** snapshots of port objects discarded while the session was busy, removed when it is given back */
+	private final List<String> m_discarded = new ArrayList<String>();
+
+	/**
+	 * detaches the connection; the workspace in the global environment belongs to the given port object
+	 * @param connection
+	 * @param owner
+	 * @throws RserveException
+	 */
+	RSharedSession(RConnection connection, RPortObject2 owner) throws RserveException {
+		m_session = connection.detach();
+		m_live = owner;
+		join(owner);
+	}
+
+	/**
+	 * attaches the session (waits while another node works with it) and restores the workspace of the given
+	 * port object into the global environment; give the connection back by {@link #release(RConnection, RPortObject2)}
+	 * @param port
+	 * @param handover	TRUE, if the connection is handed over to a downstream node which changes the workspace
+	 * @param timeout	maximum time to wait for the session in milliseconds (0 to not wait)
+	 * @return attached connection or null if the session is not available anymore
+	 * @throws InterruptedException
+	 * @throws TimeoutException		if another node still works with the session
+	 */
+	synchronized RConnection acquire(RPortObject2 port, boolean handover, long timeout) throws InterruptedException, TimeoutException {
+		long end = System.currentTimeMillis() + timeout;
+		while(m_busy) {
+			long remaining = end - System.currentTimeMillis();
+			if(remaining <= 0)
+				throw new TimeoutException("The R session is used by another node");
+			wait(remaining);
+		}
+		if(m_closed || !m_users.containsKey(port))
+			return null;
+
+		RConnection connection;
+		try {
+			connection = m_session.attach();
+		} catch (RserveException e) {
+			m_closed = true;
+			m_session = null;
+			return null;
+		}
+		m_session = null;
+		m_busy = true;
+
+		try {
+			boolean hasSnapshot = m_live != port;
+			if(hasSnapshot) {
+				if(m_live != null)
+					connection.voidEval(getSnapshotCmd(m_live));
+				connection.voidEval(getRestoreCmd(port));
+				m_live = port;
+			}
+			// the workspace is changed by the downstream node
+			if(handover) {
+				if(!hasSnapshot)
+					connection.voidEval(getSnapshotCmd(port));
+				m_live = null;
+			}
+		} catch (RserveException e) {
+			close(connection);
+			return null;
+		}
+		return connection;
+	}
+
+	/**
+	 * detaches the session again
+	 * @param connection	connection returned by {@link #acquire(RPortObject2, boolean, long)}
+	 * @param owner			new port object whose workspace is in the global environment or null
+	 */
+	synchronized void release(RConnection connection, RPortObject2 owner) {
+		if(owner != null) {
+			join(owner);
+			m_live = owner;
+		}
+		if(m_users.isEmpty()) {
+			close(connection);
+			return;
+		}
+		try {
+			for(String snapshotName : m_discarded)
+				connection.voidEval(getRemoveCmd(snapshotName));
+			m_discarded.clear();
+			m_session = connection.detach();
+		} catch (RserveException e) {
+			close(connection);
+			return;
+		}
+		m_busy = false;
+		notifyAll();
+	}
+
+	/**
+	 * removes the workspace of the given port object and closes the session if it is not used anymore;
+	 * if a node works with the session, this is done when the session is given back (does not wait)
+	 * @param port
+	 */
+	synchronized void discard(RPortObject2 port) {
+		String snapshotName = m_users.remove(port);
+		if(snapshotName == null || m_closed)
+			return;
+		if(m_live == port)
+			m_live = null;
+		if(m_busy) {
+			m_discarded.add(snapshotName);
+			return;
+		}
+
+		RConnection connection;
+		try {
+			connection = m_session.attach();
+		} catch (RserveException e) {
+			m_closed = true;
+			m_session = null;
+			return;
+		}
+		m_session = null;
+
+		if(m_users.isEmpty()) {
+			close(connection);
+			return;
+		}
+		try {
+			connection.voidEval(getRemoveCmd(snapshotName));
+			m_session = connection.detach();
+		} catch (RserveException e) {
+			close(connection);
+		}
+	}
+
+	private void close(RConnection connection) {
+		m_closed = true;
+		m_session = null;
+		m_busy = false;
+		connection.close();
+		notifyAll();
+	}
+
+	private void join(RPortObject2 port) {
+		m_users.put(port, "ws" + (++m_numJoined));
+	}
+
+	/**
+	 * @param port
+	 * @return R command to keep a snapshot of the global environment as the workspace of the given port object
+	 */
+	private String getSnapshotCmd(RPortObject2 port) {
+		return "local({ if(!(\"" + SNAPSHOT_ENV + "\" %in% search())) attach(NULL, name = \"" + SNAPSHOT_ENV + "\"); "
+				+ "assign(\"" + m_users.get(port) + "\", as.list(globalenv(), all.names = TRUE), envir = as.environment(\"" + SNAPSHOT_ENV + "\")) })";
+	}
+
+	/**
+	 * @param snapshotName
+	 * @return R command to remove a snapshot
+	 */
+	private static String getRemoveCmd(String snapshotName) {
+		return "if(\"" + SNAPSHOT_ENV + "\" %in% search()) "
+				+ "suppressWarnings(rm(list = \"" + snapshotName + "\", envir = as.environment(\"" + SNAPSHOT_ENV + "\")))";
+	}
+
+	/**
+	 * @param port
+	 * @return R command to replace the global environment by the snapshot of the given port object
+	 */
+	private String getRestoreCmd(RPortObject2 port) {
+		return "rm(list = ls(globalenv(), all.names = TRUE), envir = globalenv()); "
+				+ "invisible(list2env(get(\"" + m_users.get(port) + "\", envir = as.environment(\"" + SNAPSHOT_ENV + "\")), envir = globalenv()))";
+	}
+}
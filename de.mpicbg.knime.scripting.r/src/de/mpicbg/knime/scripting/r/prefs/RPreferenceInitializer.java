@@ -58,6 +58,40 @@ public class RPreferenceInitializer extends AbstractPreferenceInitializer {
 
     public static final String LOCAL_R_PATH = "local.r.path";
 
+    /** memory (MB) which might be used to buffer table data pushed to R before spilling it to disk */
+    public static final String R_TRANSFER_MEMORY_BUDGET = "transfer.memory.budget";
+
+    /** target size (MB) of a single message to/from R if the chunk settings of a node are not set */
+    public static final String R_TRANSFER_MESSAGE_SIZE = "transfer.message.size";
+
+    /** maximum number of idle connections kept per R server (0 disables pooling) */
+    public static final String R_CONNECTION_POOL_SIZE = "connection.pool.size";
+
+    /** compress uncompressed workspace files on the fly when uploading them to R */
+    public static final String R_UPLOAD_COMPRESSION = "transfer.upload.compression";
+
+    /** maximum size (MB) of the workspace cache on the R server (0 disables the cache) */
+    public static final String R_WORKSPACE_CACHE_SIZE = "workspace.cache.size";
+
+    /** keep the R session of a generic R output alive for the downstream node instead of transferring the workspace */
+    public static final String R_SESSION_AFFINITY = "session.affinity";
+
+    /** push only the columns of input tables which are referenced by the script */
+    public static final String R_COLUMN_PROJECTION = "transfer.column.projection";
+
+    /** keep low cardinality string columns as factors in R (they are transferred as factors) */
+    public static final String R_STRINGS_AS_FACTORS = "transfer.strings.as.factors";
+
+    /** maximum size (MB) of the local cache of node results (0 disables the cache) */
+    public static final String R_RESULT_CACHE_SIZE = "result.cache.size";
+
+    /** compression of saved R workspaces (generic R output) */
+    public static final String R_WORKSPACE_FORMAT = "workspace.format";
+    public static final String WS_FORMAT_NONE = "none";
+    public static final String WS_FORMAT_FAST = "fast";
+    public static final String WS_FORMAT_GZIP = "gzip";
+    public static final String WS_FORMAT_XZ = "xz";
+
 
     @Override
     public void initializeDefaultPreferences() {
@@ -67,6 +101,16 @@ public class RPreferenceInitializer extends AbstractPreferenceInitializer {
         store.setDefault(USE_EVALUATE_PACKAGE, false);
         store.setDefault(R_HOST, "localhost");
         store.setDefault(R_PORT, 6311);
+        store.setDefault(R_TRANSFER_MEMORY_BUDGET, 512);
+        store.setDefault(R_TRANSFER_MESSAGE_SIZE, 64);
+        store.setDefault(R_CONNECTION_POOL_SIZE, 0);
+        store.setDefault(R_UPLOAD_COMPRESSION, true);
+        store.setDefault(R_WORKSPACE_CACHE_SIZE, 0);
+        store.setDefault(R_SESSION_AFFINITY, false);
+        store.setDefault(R_WORKSPACE_FORMAT, WS_FORMAT_GZIP);
+        store.setDefault(R_COLUMN_PROJECTION, false);
+        store.setDefault(R_STRINGS_AS_FACTORS, false);
+        store.setDefault(R_RESULT_CACHE_SIZE, 0);
 
 
         store.setDefault(R_PLOT_TEMPLATES, "https://raw.githubusercontent.com/knime-mpicbg/scripting-templates/master/knime-scripting-templates/R/figure-templates.txt");
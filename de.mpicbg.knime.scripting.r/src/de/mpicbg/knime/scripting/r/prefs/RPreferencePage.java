@@ -29,6 +29,7 @@ import de.mpicbg.knime.scripting.core.prefs.TemplateTableEditor;
 import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
 
 import org.eclipse.jface.preference.BooleanFieldEditor;
+import org.eclipse.jface.preference.ComboFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.StringFieldEditor;
@@ -60,6 +61,21 @@ public class RPreferencePage extends FieldEditorPreferencePage implements IWorkb
         addField(new StringFieldEditor(RPreferenceInitializer.R_HOST, "The host where Rserve is running", parent));
         addField(new IntegerFieldEditor(RPreferenceInitializer.R_PORT, "The port on which Rserve is listening", parent));
         addField(new BooleanFieldEditor(RPreferenceInitializer.REPAINT_ON_RESIZE, "Repaint on resize", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_TRANSFER_MEMORY_BUDGET, "Memory to buffer data pushed to R (MB)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_TRANSFER_MESSAGE_SIZE, "Target message size for chunked transfers (MB)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_CONNECTION_POOL_SIZE, "Idle R connections kept per server (0 = no pooling; attached packages and options carry over)", parent));
+        addField(new BooleanFieldEditor(RPreferenceInitializer.R_UPLOAD_COMPRESSION, "Compress uncompressed workspaces for the upload to R", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_WORKSPACE_CACHE_SIZE, "Workspace cache on the R server (MB, 0 = no cache; shared by all clients of the server account)", parent));
+        addField(new BooleanFieldEditor(RPreferenceInitializer.R_SESSION_AFFINITY, "Keep R sessions of generic R outputs for downstream nodes", parent));
+        addField(new ComboFieldEditor(RPreferenceInitializer.R_WORKSPACE_FORMAT, "Compression of R workspaces (generic R output)", 
+        		new String[][]{{"uncompressed", RPreferenceInitializer.WS_FORMAT_NONE}, 
+        			{"fast (gzip level 1)", RPreferenceInitializer.WS_FORMAT_FAST}, 
+        			{"default (gzip)", RPreferenceInitializer.WS_FORMAT_GZIP}, 
+        			{"high ratio (xz)", RPreferenceInitializer.WS_FORMAT_XZ}}, 
+        		parent));
+        addField(new BooleanFieldEditor(RPreferenceInitializer.R_COLUMN_PROJECTION, "Push only the input columns referenced by the script", parent));
+        addField(new BooleanFieldEditor(RPreferenceInitializer.R_STRINGS_AS_FACTORS, "Keep low cardinality string columns as factors in R", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_RESULT_CACHE_SIZE, "Cache of node results (MB, 0 = no cache)", parent));
         
         addField(new BooleanFieldEditor(RPreferenceInitializer.USE_EVALUATE_PACKAGE, "Enable R-console view (requires 'evaluate' package)", parent));
 
@@ -4,20 +4,26 @@ import de.mpicbg.knime.knutils.AbstractNodeModel;
 import de.mpicbg.knime.knutils.Attribute;
 import de.mpicbg.knime.knutils.AttributeUtils;
 import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+import de.mpicbg.knime.scripting.r.RCommandBatch;
 import de.mpicbg.knime.scripting.r.RUtils;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.knime.core.data.*;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPString;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 /**
  * This is the model implementation of RSnippet. Improved R Integration for Knime
  *
@@ -25,6 +31,9 @@ import java.util.List;
  */
 public class FixColumnsNamesNodeModel extends AbstractNodeModel {
 
+    /** R variable with the column names */
+    private static final String VAR_NAMES = "knime.col.names";
+
     SettingsModelBoolean useMakeNames = FixColumnsNamesNodeFactory.createPropStrictRNames();
 
 
@@ -63,95 +72,135 @@ public class FixColumnsNamesNodeModel extends AbstractNodeModel {
     private DataTableSpec fixSpec(DataTableSpec inputSpecs) throws KnimeScriptingException, RserveException, REXPMismatchException {
         List<Attribute> inputAttributes = AttributeUtils.convert(inputSpecs);
         List<DataColumnSpec> outputSpec = new ArrayList<DataColumnSpec>();
-        
-        //establish connection if names should be fixed by R
-        RConnection connection = null;
-        if(useMakeNames.getBooleanValue())
-        	connection = RUtils.createConnection();
 
-        try {
-	        for (Attribute attribute : inputAttributes) {
-	
-	            String originalName = attribute.getName();
-	            String fixedName = null;
-	
-	            if (useMakeNames.getBooleanValue()) {
-						fixedName = fixNameWithR(originalName, connection);
-	            } else {
-	                fixedName = fixName(originalName);
-	            }
-	
-	            if (!originalName.equals(fixedName)) {
-	                DataColumnSpecCreator columnSpecCreator = new DataColumnSpecCreator(fixedName, attribute.getType());
-	
-	                if (attribute.getColumnSpec().getDomain() != null) {
-	                    DataColumnDomain domain = attribute.getColumnSpec().getDomain();
-	                    DataColumnDomain dataColumnDomain = new DataColumnDomainCreator(domain).createDomain();
-	                    columnSpecCreator.setDomain(dataColumnDomain);
-	                }
-	
-	                outputSpec.add(columnSpecCreator.createSpec());
-	            } else {
-	                outputSpec.add(attribute.getColumnSpec());
-	            }
-	        }
-        } catch(Exception e) {
-        	if(connection != null) connection.close();
-        	throw e;
+        String[] originalNames = new String[inputAttributes.size()];
+        for (int i = 0; i < originalNames.length; i++)
+            originalNames[i] = inputAttributes.get(i).getName();
+
+        String[] fixedNames;
+        if (useMakeNames.getBooleanValue()) {
+            //establish connection as names should be fixed by R
+            RConnection connection = RUtils.createConnection();
+            try {
+                fixedNames = fixNamesWithR(originalNames, connection);
+            } finally {
+                // give connection to R back to the pool
+                RUtils.releaseConnection(connection);
+            }
+        } else {
+            fixedNames = fixNames(originalNames);
         }
-        
-        // close connection to R
-        if(useMakeNames.getBooleanValue()) {
-        	assert(connection != null);
-        	connection.close();
+
+        for (int i = 0; i < originalNames.length; i++) {
+            Attribute attribute = inputAttributes.get(i);
+            String originalName = originalNames[i];
+            String fixedName = fixedNames[i];
+
+            if (!originalName.equals(fixedName)) {
+                DataColumnSpecCreator columnSpecCreator = new DataColumnSpecCreator(fixedName, attribute.getType());
+
+                if (attribute.getColumnSpec().getDomain() != null) {
+                    DataColumnDomain domain = attribute.getColumnSpec().getDomain();
+                    DataColumnDomain dataColumnDomain = new DataColumnDomainCreator(domain).createDomain();
+                    columnSpecCreator.setDomain(dataColumnDomain);
+                }
+
+                outputSpec.add(columnSpecCreator.createSpec());
+            } else {
+                outputSpec.add(attribute.getColumnSpec());
+            }
         }
-        	
 
         return new DataTableSpec(outputSpec.toArray(new DataColumnSpec[outputSpec.size()]));
     }
 
 
-    private String fixNameWithR(String originalName, RConnection connection) throws RserveException, REXPMismatchException {
-    	
-    	// mask " in column names to avoid syntax errors with R
-    	originalName = StringEscapeUtils.escapeJava(originalName); //create an additional plugin dependency 
-    	//originalName = originalName.replace('"', '.');
-    	//originalName = originalName.replace('\', '.');
-    			
+    /**
+     * fixes all names with a single R call (names are transferred as character vector, no escaping needed)
+     * @param originalNames
+     * @param connection
+     * @return syntactically valid and unique names
+     */
+    private String[] fixNamesWithR(String[] originalNames, RConnection connection) throws RserveException, REXPMismatchException {
     	// connection should not be null, as it throws exception when creation fails
     	assert(connection != null);
-    	return connection.eval("make.unique(make.names(\"" + originalName + "\"))").asStrings()[0];
+    	if (originalNames.length == 0) return originalNames;
 
+    	RCommandBatch batch = new RCommandBatch(connection);
+    	batch.assign(VAR_NAMES, new REXPString(originalNames));
+    	return batch.eval("make.unique(make.names(" + VAR_NAMES + "))").asStrings();
     }
 
 
-    private String fixName(String originalName) {
-        while (originalName.startsWith("+")) {
-            originalName = originalName.replaceAll("[+]", "Plus");
-        }
+    /**
+     * replaces the leading operator character of each name and makes the names unique (like make.unique in R)
+     * @param originalNames
+     * @return fixed names
+     */
+    private String[] fixNames(String[] originalNames) {
+        String[] fixedNames = new String[originalNames.length];
+        for (int i = 0; i < originalNames.length; i++)
+            fixedNames[i] = fixName(originalNames[i]);
+        return makeUnique(fixedNames);
+    }
 
-        while (originalName.startsWith("-")) {
-            originalName = originalName.replaceAll("[-]", "Minus");
-        }
 
-        while (originalName.startsWith("*")) {
-            originalName = originalName.replaceAll("[*]", "Times");
+    /**
+     * replaces a leading +, -, *, % or : and all further occurrences of that character (a leading / only) by a word
+     * @param originalName
+     * @return fixed name (the same instance if nothing was replaced)
+     */
+    private String fixName(String originalName) {
+        if (originalName.isEmpty()) return originalName;
+
+        char first = originalName.charAt(0);
+        String replacement;
+        switch (first) {
+            case '+': replacement = "Plus"; break;
+            case '-': replacement = "Minus"; break;
+            case '*': replacement = "Times"; break;
+            case '%': replacement = "Percent"; break;
+            case ':': replacement = "DivBy"; break;
+            case '/': return "DivBy" + originalName.substring(1);
+            default: return originalName;
         }
 
-        while (originalName.startsWith("%")) {
-            originalName = originalName.replaceAll("[%]", "Percent");
+        StringBuilder sb = new StringBuilder(originalName.length() + replacement.length() * 2);
+        for (int i = 0; i < originalName.length(); i++) {
+            char c = originalName.charAt(i);
+            if (c == first) sb.append(replacement);
+            else sb.append(c);
         }
+        return sb.toString();
+    }
 
-        while (originalName.startsWith(":")) {
-            originalName = originalName.replaceAll("[:]", "DivBy");
-        }
 
-        while (originalName.startsWith("/")) {
-            originalName = originalName.replaceFirst("[/]", "DivBy");
+    /**
+     * appends .1, .2, ... to duplicated names (first occurrence is kept), new names do not clash with any other name
+     * @param names		modified in place
+     * @return names
+     */
+    private static String[] makeUnique(String[] names) {
+        Set<String> allNames = new HashSet<String>(Arrays.asList(names));
+        if (allNames.size() == names.length) return names;
+
+        Set<String> used = new HashSet<String>(names.length * 2);
+        Map<String, Integer> counters = new HashMap<String, Integer>();
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            if (used.add(name)) continue;
+
+            Integer cnt = counters.get(name);
+            int n = cnt == null ? 1 : cnt;
+            String candidate;
+            do {
+                candidate = name + "." + n++;
+            } while (allNames.contains(candidate) || used.contains(candidate));
+            counters.put(name, n);
+            used.add(candidate);
+            names[i] = candidate;
         }
-
-        return originalName;
-
+        return names;
     }
 
 